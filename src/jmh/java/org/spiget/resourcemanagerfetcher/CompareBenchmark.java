@@ -0,0 +1,118 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.stream.JsonReader;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+import org.spiget.data.author.Author;
+import org.spiget.data.resource.Resource;
+import org.spiget.database.DatabaseParser;
+import org.spiget.database.SpigetGson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-item cost of the resource/author check, from the recorded payloads in <code>payloads/</code>.
+ * <p>
+ * Run with <code>mvn -P benchmark package exec:exec</code>; allocations are reported by the <code>gc</code> profiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompareBenchmark {
+
+    String resourcePayload;
+    String authorPayload;
+
+    Document resourceDocument;
+    Document authorDocument;
+    String versionName;
+
+    ResourcePayload resourceFields = new ResourcePayload();
+    AuthorPayload authorFields = new AuthorPayload();
+    ResourceSnapshot resource;
+    AuthorSnapshot author;
+
+    @Setup
+    public void setup() throws IOException {
+        resourcePayload = read("resource.json");
+        authorPayload = read("author.json");
+        resourceDocument = Document.parse(read("resource-document.json"));
+        authorDocument = Document.parse(read("author-document.json"));
+        versionName = Document.parse(read("resource-version.json")).getString("name");
+
+        resourceFields.read(new JsonReader(new StringReader(resourcePayload)));
+        authorFields.read(new JsonReader(new StringReader(authorPayload)));
+        resource = ResourceSnapshot.fromDocument(resourceDocument);
+        author = AuthorSnapshot.fromDocument(authorDocument);
+    }
+
+    static String read(String name) throws IOException {
+        try (InputStream in = CompareBenchmark.class.getResourceAsStream("/payloads/" + name)) {
+            if (in == null) {throw new IOException("Missing payload " + name);}
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Mapping the stored document to the full data class, as the fetcher did before snapshots
+     */
+    @Benchmark
+    public Resource decodeResourceDocumentLegacy() {
+        return SpigetGson.RESOURCE.fromJson(DatabaseParser.toJson(resourceDocument), Resource.class);
+    }
+
+    @Benchmark
+    public ResourceSnapshot decodeResourceDocument() {
+        return ResourceSnapshot.fromDocument(resourceDocument);
+    }
+
+    @Benchmark
+    public Author decodeAuthorDocumentLegacy() {
+        return SpigetGson.AUTHOR.fromJson(DatabaseParser.toJson(authorDocument), Author.class);
+    }
+
+    @Benchmark
+    public AuthorSnapshot decodeAuthorDocument() {
+        return AuthorSnapshot.fromDocument(authorDocument);
+    }
+
+    @Benchmark
+    public Changes compareResource() {
+        return ResourceComparator.compare(resource, resourceFields, versionName);
+    }
+
+    @Benchmark
+    public Changes compareAuthor() {
+        return AuthorComparator.compare(author, authorFields);
+    }
+
+    @Benchmark
+    public long digestResource() {
+        return ChangeDigest.ofResource(resourceFields) ^ ChangeDigest.ofResource(resource, versionName);
+    }
+
+    @Benchmark
+    public long digestAuthor() {
+        return ChangeDigest.ofAuthor(authorFields) ^ ChangeDigest.ofAuthor(author, true);
+    }
+
+    /**
+     * Everything that happens for a resource between the cursor read and the write, without I/O
+     */
+    @Benchmark
+    public Changes checkResource() throws IOException {
+        ResourceSnapshot resource = ResourceSnapshot.fromDocument(resourceDocument);
+        ResourcePayload payload = ResourcePayload.local();
+        payload.read(new JsonReader(new StringReader(resourcePayload)));
+        if (ChangeDigest.ofResource(payload) == ChangeDigest.ofResource(resource, versionName)) {return null;}
+        return ResourceComparator.compare(resource, payload, versionName);
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getting the compared fields out of a SpigotMC payload: a full Gson tree against streaming into the reused
+ * {@link ResourcePayload}/{@link AuthorPayload} holders.
+ * <p>
+ * Run with <code>mvn -P benchmark package exec:exec</code>; allocations are reported by the <code>gc</code> profiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+    String resourcePayload;
+    String authorPayload;
+    JsonObject resourceTree;
+
+    @Setup
+    public void setup() throws IOException {
+        resourcePayload = CompareBenchmark.read("resource.json");
+        authorPayload = CompareBenchmark.read("author.json");
+        resourceTree = new JsonParser().parse(resourcePayload).getAsJsonObject();
+    }
+
+    @Benchmark
+    public JsonObject parseResourceTree() {
+        return new JsonParser().parse(resourcePayload).getAsJsonObject();
+    }
+
+    @Benchmark
+    public ResourcePayload streamResource() throws IOException {
+        ResourcePayload payload = ResourcePayload.local();
+        payload.read(new JsonReader(new StringReader(resourcePayload)));
+        return payload;
+    }
+
+    /**
+     * The fallback for clients that hand out a tree, like the legacy client
+     */
+    @Benchmark
+    public ResourcePayload streamResourceFromTree() throws IOException {
+        ResourcePayload payload = ResourcePayload.local();
+        payload.read(new JsonReader(new StringReader(resourceTree.toString())));
+        return payload;
+    }
+
+    @Benchmark
+    public JsonObject parseAuthorTree() {
+        return new JsonParser().parse(authorPayload).getAsJsonObject();
+    }
+
+    @Benchmark
+    public AuthorPayload streamAuthor() throws IOException {
+        AuthorPayload payload = AuthorPayload.local();
+        payload.read(new JsonReader(new StringReader(authorPayload)));
+        return payload;
+    }
+
+}
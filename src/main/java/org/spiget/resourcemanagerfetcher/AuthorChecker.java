@@ -0,0 +1,106 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.stream.JsonReader;
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+public class AuthorChecker implements Checker<AuthorSnapshot, AuthorPayload> {
+
+    private final SpigetRestFetcher fetcher;
+
+    public AuthorChecker(SpigetRestFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    @Override
+    public String getType() {
+        return "author";
+    }
+
+    @Override
+    public MongoCollection<Document> getCollection() {
+        return SpigetRestFetcher.databaseClient.getAuthorsCollection();
+    }
+
+    @Override
+    public String getSortField() {
+        return "fetch.restDue";
+    }
+
+    @Override
+    public Bson getProjection() {
+        return AuthorSnapshot.PROJECTION;
+    }
+
+    @Override
+    public AuthorSnapshot decode(Document document) {
+        return AuthorSnapshot.fromDocument(document);
+    }
+
+    @Override
+    public int getId(AuthorSnapshot author) {
+        return author.getId();
+    }
+
+    @Override
+    public long getLastFetched(AuthorSnapshot author) {
+        return author.getLastFetched();
+    }
+
+    @Override
+    public long getInterval(AuthorSnapshot author) {
+        return fetcher.authorInterval;
+    }
+
+    @Override
+    public CompletableFuture<SpigotApiClient.Response> request(SpigotApiClient client, AuthorSnapshot author) {
+        return client.getAuthor(author.getId());
+    }
+
+    @Override
+    public AuthorPayload read(JsonReader in) throws IOException {
+        AuthorPayload payload = AuthorPayload.local();
+        return payload.read(in) ? payload : null;
+    }
+
+    @Override
+    public long digest(AuthorSnapshot author, AuthorPayload payload) {
+        return ChangeDigest.ofAuthor(author, payload.isAvatarObject());
+    }
+
+    @Override
+    public long digest(AuthorPayload payload) {
+        return ChangeDigest.ofAuthor(payload);
+    }
+
+    @Override
+    public long getLastDigest(int id) {
+        return SpigetRestFetcher.digests.getAuthor(id);
+    }
+
+    @Override
+    public void putLastDigest(int id, long digest) {
+        SpigetRestFetcher.digests.putAuthor(id, digest);
+    }
+
+    @Override
+    public Changes compare(AuthorSnapshot author, AuthorPayload payload) {
+        return AuthorComparator.compare(author, payload);
+    }
+
+    @Override
+    public void notFound(AuthorSnapshot author) {
+        fetcher.requestUpdate(author.getId(), "author", true);// the main fetcher deletes it
+    }
+
+    @Override
+    public void schedule(AuthorSnapshot author, @Nullable Changes changes) {
+        fetcher.scheduleNextCheck(author);
+    }
+
+}
@@ -0,0 +1,59 @@
+package org.spiget.resourcemanagerfetcher;
+
+import org.bson.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compares a SpigotMC <code>getAuthor</code> payload with the author in the database.
+ */
+public class AuthorComparator {
+
+    public static Changes compare(AuthorSnapshot author, AuthorPayload payload) {
+        Changes changes = new Changes();
+
+        String username = payload.getUsername();
+        if (author.getName() != null && username != null && !author.getName().equals(username)) {// name changed
+            changes.change("name", author.getName(), username, new Document("name", username));
+        }
+
+        if (!payload.getIdentities().isEmpty()) {
+            Map<String, Object> identityMap = new HashMap<>();
+            if (author.getIdentities() != null) {
+                identityMap.putAll(author.getIdentities());
+            }
+            boolean changed = false;
+            for (Map.Entry<String, String> entry : payload.getIdentities().entrySet()) {
+                String value = entry.getValue();
+                if (!identityMap.containsKey(entry.getKey()) || !value.equals(identityMap.get(entry.getKey()))) {
+                    changes.change("identities." + entry.getKey(), identityMap.get(entry.getKey()), value);
+                    identityMap.put(entry.getKey(), value);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                changes.set.put("identities", new Document(identityMap));
+            }
+        }
+
+        if (payload.hasAvatar() && author.hasIcon()) {
+            if (payload.isAvatarObject()) {
+                String info = payload.getAvatarInfo();
+                String hash = payload.getAvatarHash();
+                if ((info != null && !info.equals(author.getIconInfo())) || (hash != null && !hash.equals(author.getIconHash()))) {
+                    changes.change("icon", author.getIconInfo() + "/" + author.getIconHash(), info + "/" + hash, new Document("icon.info", info).append("icon.hash", hash));
+                }
+            } else {
+                String avatar = payload.getAvatarUrl();
+                if (!Objects.equals(avatar, author.getIconUrl())) {
+                    changes.change("icon", author.getIconUrl(), avatar, new Document("icon.url", avatar));
+                }
+            }
+        }
+
+        return changes;
+    }
+
+}
@@ -0,0 +1,121 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The few fields of a SpigotMC author payload the fetcher compares, streamed from a {@link JsonReader} without
+ * building a tree.
+ * <p>
+ * <code>avatar</code> is either an <code>{info, hash}</code> object or a url; null identities are dropped.
+ */
+@Getter
+public class AuthorPayload {
+
+    private static final ThreadLocal<AuthorPayload> LOCAL = ThreadLocal.withInitial(AuthorPayload::new);
+
+    private int id;
+    private String username;
+    /**
+     * Sorted by name, so the digest can use it as is
+     */
+    private final Map<String, String> identities = new TreeMap<>();
+    /**
+     * Whether the avatar was sent as an info/hash object rather than a url
+     */
+    private boolean avatarObject;
+    private String avatarInfo;
+    private String avatarHash;
+    private String avatarUrl;
+
+    /**
+     * @return the holder of the calling thread, overwritten by its next {@link #read(JsonReader)}
+     */
+    public static AuthorPayload local() {
+        return LOCAL.get();
+    }
+
+    void reset() {
+        id = -1;
+        username = null;
+        identities.clear();
+        avatarObject = false;
+        avatarInfo = null;
+        avatarHash = null;
+        avatarUrl = null;
+    }
+
+    public boolean hasAvatar() {
+        return avatarObject || avatarUrl != null;
+    }
+
+    /**
+     * @return <code>false</code> if the value isn't an object, which is skipped
+     */
+    public boolean read(JsonReader in) throws IOException {
+        reset();
+        if (!ResourcePayload.beginObject(in)) {return false;}
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    id = ResourcePayload.intValue(in);
+                    break;
+                case "username":
+                    username = ResourcePayload.string(in);
+                    break;
+                case "identities":
+                    readIdentities(in);
+                    break;
+                case "avatar":
+                    readAvatar(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        return true;
+    }
+
+    void readIdentities(JsonReader in) throws IOException {
+        if (!ResourcePayload.beginObject(in)) {return;}
+        while (in.hasNext()) {
+            String name = in.nextName();
+            String value = ResourcePayload.string(in);
+            if (value != null) {
+                identities.put(name, value);
+            }
+        }
+        in.endObject();
+    }
+
+    void readAvatar(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            avatarUrl = ResourcePayload.string(in);
+            return;
+        }
+        avatarObject = true;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "info":
+                    avatarInfo = ResourcePayload.string(in);
+                    break;
+                case "hash":
+                    avatarHash = ResourcePayload.string(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+    }
+
+}
@@ -0,0 +1,72 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.mongodb.client.model.Projections;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The few author fields compared against SpigotMC, decoded straight from a projected {@link Document}.
+ */
+@Getter
+public class AuthorSnapshot {
+
+    public static final Bson PROJECTION = Projections.include(
+            "_id",
+            "name",
+            "identities",
+            "icon.url",
+            "icon.info",
+            "icon.hash",
+            "fetch.restDue",
+            "fetch.restLatest",
+            "fetch.latest"
+    );
+
+    private int id;
+    private String name;
+    private Map<String, Object> identities;
+    @Getter(AccessLevel.NONE)
+    private boolean hasIcon;
+    private String iconUrl;
+    private String iconInfo;
+    private String iconHash;
+    /**
+     * Last fetch by this or the main fetcher, <code>0</code> if never
+     */
+    private long lastFetched;
+
+    public static AuthorSnapshot fromDocument(Document document) {
+        AuthorSnapshot snapshot = new AuthorSnapshot();
+        snapshot.id = ResourceSnapshot.intValue(document.get("_id"), 0);
+        snapshot.name = document.getString("name");
+
+        Object identities = document.get("identities");
+        if (identities instanceof Document) {
+            snapshot.identities = new HashMap<>((Document) identities);
+        }
+
+        Object icon = document.get("icon");
+        if (icon instanceof Document) {
+            snapshot.hasIcon = true;
+            snapshot.iconUrl = ((Document) icon).getString("url");
+            snapshot.iconInfo = ((Document) icon).getString("info");
+            snapshot.iconHash = ((Document) icon).getString("hash");
+        }
+
+        Object fetch = document.get("fetch");
+        if (fetch instanceof Document) {
+            snapshot.lastFetched = ResourceSnapshot.lastFetched((Document) fetch);
+        }
+        return snapshot;
+    }
+
+    public boolean hasIcon() {
+        return hasIcon;
+    }
+
+}
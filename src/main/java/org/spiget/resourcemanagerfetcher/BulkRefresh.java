@@ -0,0 +1,110 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.stream.JsonReader;
+import com.mongodb.client.model.Filters;
+import io.sentry.Sentry;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Refreshes resources from the <code>listResources</code> pages, which return the same data as <code>getResource</code>
+ * for many resources per request.
+ * <p>
+ * Every listed resource is diffed against the database through the resource stream's check. Only resources that were
+ * due get their next check scheduled, so they drop out of the due filter and only those the listings don't cover are
+ * requested one by one afterwards. The others keep their schedule, which would otherwise back off further on every
+ * pass regardless of how often it runs. The pass stops at the first empty or failed page.
+ */
+@Log4j2
+public class BulkRefresh {
+
+    private final SpigetRestFetcher fetcher;
+    private final CheckStream<ResourceSnapshot, ResourcePayload> stream;
+    private final Integer category;
+    private final int maxPages;
+
+    public BulkRefresh(SpigetRestFetcher fetcher, CheckStream<ResourceSnapshot, ResourcePayload> stream, Integer category, int maxPages) {
+        this.fetcher = fetcher;
+        this.stream = stream;
+        this.category = category;
+        this.maxPages = maxPages;
+    }
+
+    /**
+     * @return number of resources checked
+     */
+    public int run() {
+        Checker<ResourceSnapshot, ResourcePayload> checker = stream.getChecker();
+        int checked = 0;
+        int page = 1;
+        for (; page <= maxPages; page++) {
+            List<ResourcePayload> listed = requestPage(page);
+            if (listed == null || listed.isEmpty()) {break;}
+
+            long cursorStart = System.nanoTime();
+            Map<Integer, ResourcePayload> byId = new HashMap<>(listed.size() * 2);
+            for (ResourcePayload payload : listed) {
+                if (payload.getId() < 0) {continue;}
+                byId.put(payload.getId(), payload);
+            }
+            List<ResourceSnapshot> resources = new ArrayList<>(byId.size());
+            for (Document document : checker.getCollection()
+                    .find(Filters.in("_id", byId.keySet()))
+                    .projection(checker.getProjection())) {
+                resources.add(checker.decode(document));
+            }
+            checker.preparePage(resources);
+            fetcher.pipeline.record(PipelineMetrics.Stage.CURSOR, cursorStart);
+
+            for (ResourceSnapshot resource : resources) {
+                long compareStart = System.nanoTime();
+                stream.check(resource, byId.get(resource.getId()), resource.getRestDue() < fetcher.startTime);
+                fetcher.pipeline.record(PipelineMetrics.Stage.COMPARE, compareStart);
+                fetcher.progress.itemProcessed();
+                fetcher.pipeline.countItem();
+                checked++;
+            }
+            // listed resources that aren't in the database yet are left to the main fetcher
+        }
+        SpigetRestFetcher.writes.flush();
+        log.info("Bulk refresh checked {} resources from {} pages", checked, page - 1);
+        return checked;
+    }
+
+    List<ResourcePayload> requestPage(int page) {
+        try {
+            stream.rateLimiter.acquire();
+            fetcher.requestSent();
+            SpigotApiClient.Response response = fetcher.apiClient.listResources(category, page).join();
+            if (response == null) {return null;}
+            fetcher.pipeline.countResponse(response.code);
+            stream.breaker.record(response.code == 503 || response.code == 429);
+            if (response.code != 200 || !response.hasBody()) {
+                log.warn("Got Code {} for listResources page {}, falling back to single requests", response.code, page);
+                return null;
+            }
+            long decodeStart = System.nanoTime();
+            try (JsonReader reader = response.reader()) {
+                List<ResourcePayload> listed = ResourcePayload.readList(reader);
+                fetcher.pipeline.record(PipelineMetrics.Stage.DECODE, decodeStart);
+                if (listed == null) {
+                    log.warn("Expected listResources page {} to be a json array, falling back to single requests", page);
+                }
+                return listed;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            log.warn("Failed to list resources page {}, falling back to single requests", page, e);
+            return null;
+        }
+    }
+
+}
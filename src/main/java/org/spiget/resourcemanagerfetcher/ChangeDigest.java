@@ -0,0 +1,101 @@
+package org.spiget.resourcemanagerfetcher;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 64-bit FNV-1a hash over the normalized fields the fetcher compares.
+ * <p>
+ * The SpigotMC payload and the database snapshot are normalized the same way, so equal digests mean none of the
+ * checks would change anything. <code>0</code> means the payload couldn't be normalized and has to be compared in full.
+ */
+public class ChangeDigest {
+
+    private static final long OFFSET = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private long hash = OFFSET;
+
+    ChangeDigest add(Object value) {
+        String string = value == null ? "\u0000" : String.valueOf(value);
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            hash = (hash ^ (c & 0xff)) * PRIME;
+            hash = (hash ^ (c >>> 8)) * PRIME;
+        }
+        hash = (hash ^ 0x1f) * PRIME;// field separator
+        return this;
+    }
+
+    long get() {
+        return hash == 0 ? 1 : hash;
+    }
+
+    static String price(double price, String currency) {
+        return price + (currency == null ? "" : currency.toUpperCase());
+    }
+
+    /**
+     * @return <code>0</code> if a compared field is missing
+     */
+    public static long ofResource(ResourcePayload payload) {
+        if (payload.getTitle() == null || payload.getTag() == null || payload.getCurrentVersion() == null
+                || payload.getDownloads() < 0 || payload.getRatingCount() < 0 || Float.isNaN(payload.getRating())) {return 0;}
+        return new ChangeDigest()
+                .add(payload.getTitle())
+                .add(payload.getTag())
+                .add(payload.isPremium() ? price(payload.getPrice(), payload.getCurrency()) : "free")
+                .add(payload.getDownloads())
+                .add(payload.getRatingCount())
+                .add(payload.getRating())
+                .add(payload.getCurrentVersion())
+                .get();
+    }
+
+    public static long ofResource(ResourceSnapshot resource, String versionName) {
+        if (!resource.isRated() || versionName == null) {return 0;}
+        return new ChangeDigest()
+                .add(resource.getName())
+                .add(resource.getTag())
+                .add(resource.isPremium() ? price(resource.getPrice(), resource.getCurrency()) : "free")
+                .add(resource.getDownloads())
+                .add(resource.getRatingCount())
+                .add(resource.getRatingAverage())
+                .add(versionName)
+                .get();
+    }
+
+    public static long ofAuthor(AuthorPayload payload) {
+        if (payload.getUsername() == null) {return 0;}
+        ChangeDigest digest = new ChangeDigest().add(payload.getUsername());
+        for (Map.Entry<String, String> entry : payload.getIdentities().entrySet()) {
+            digest.add(entry.getKey()).add(entry.getValue());
+        }
+        if (payload.isAvatarObject()) {
+            digest.add(payload.getAvatarInfo()).add(payload.getAvatarHash());
+        } else if (payload.getAvatarUrl() != null) {
+            digest.add(payload.getAvatarUrl());
+        }
+        return digest.get();
+    }
+
+    /**
+     * @param avatarObject whether SpigotMC sent the avatar as an info/hash object rather than a url
+     */
+    public static long ofAuthor(AuthorSnapshot author, boolean avatarObject) {
+        if (!author.hasIcon()) {return 0;}
+        ChangeDigest digest = new ChangeDigest().add(author.getName());
+        if (author.getIdentities() != null) {
+            for (Map.Entry<String, Object> entry : new TreeMap<>(author.getIdentities()).entrySet()) {
+                digest.add(entry.getKey()).add(entry.getValue());
+            }
+        }
+        if (avatarObject) {
+            digest.add(author.getIconInfo()).add(author.getIconHash());
+        } else {
+            digest.add(author.getIconUrl());
+        }
+        return digest.get();
+    }
+
+}
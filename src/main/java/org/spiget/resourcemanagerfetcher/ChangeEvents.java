@@ -0,0 +1,36 @@
+package org.spiget.resourcemanagerfetcher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.StringMapMessage;
+
+/**
+ * Central point every detected change passes through, logged as one JSON object per change to the
+ * <code>ChangeEvents</code> logger for auditing, and queued to the {@link ChangeFeed} if there is one.
+ */
+public class ChangeEvents {
+
+    private static final Logger EVENTS = LogManager.getLogger("ChangeEvents");
+
+    private static volatile ChangeFeed feed;
+
+    static void setFeed(ChangeFeed feed) {
+        ChangeEvents.feed = feed;
+    }
+
+    public static void changed(String entity, int id, Changes.Change change) {
+        ChangeFeed feed = ChangeEvents.feed;
+        if (feed != null) {
+            feed.add(entity, id, change);
+        }
+        if (!EVENTS.isInfoEnabled()) {return;}
+        EVENTS.info(new StringMapMessage(6)
+                .with("ts", System.currentTimeMillis())
+                .with("entity", entity)
+                .with("id", id)
+                .with("field", change.field)
+                .with("old", String.valueOf(change.oldValue))
+                .with("new", String.valueOf(change.newValue)));
+    }
+
+}
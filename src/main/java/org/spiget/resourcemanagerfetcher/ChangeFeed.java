@@ -0,0 +1,236 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.stream.JsonWriter;
+import io.sentry.Sentry;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.Level;
+import org.bson.Document;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Append-only feed of the detected changes for downstream consumers, one JSON object per line:
+ * <code>{"ts", "run", "entity", "id", "field", "old", "new"}</code>.
+ * <p>
+ * Changes are queued by the checks and written in batches by a background flush, every flush interval or once
+ * {@link #batchSize} are queued. Files are named <code>changes-&lt;run&gt;-&lt;seq&gt;.ndjson</code>, written as
+ * <code>.part</code> and renamed after the batch that takes them past the size limit or when the run ends, so consumers only ever see complete
+ * files and can process them in name order.
+ */
+@Log4j2
+public class ChangeFeed {
+
+    private final File directory;
+    private final long maxBytes;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+
+    private final LinkedBlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    private volatile long run;
+    private int seq;
+    private File file;
+    private CountingOutputStream stream;
+    private Writer writer;
+
+    public ChangeFeed(File directory, long maxBytes, int batchSize, long flushIntervalMillis) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.batchSize = batchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "change-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts the files and the report of a run
+     */
+    public synchronized void begin(long run) {
+        flush();
+        roll();
+        this.run = run;
+        this.seq = 0;
+        counts.clear();
+    }
+
+    public void add(String entity, int id, Changes.Change change) {
+        queue.add(new Record(System.currentTimeMillis(), run, entity, id, change.field, change.oldValue, change.newValue));
+        counts.computeIfAbsent(entity + "." + (change.field.startsWith("identities.") ? "identities" : change.field), k -> new LongAdder()).increment();
+        if (queue.size() >= batchSize) {
+            scheduler.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Writes everything queued so far, blocking until done
+     */
+    public synchronized void flush() {
+        if (queue.isEmpty()) {return;}
+        List<Record> batch = new ArrayList<>(Math.max(batchSize, queue.size()));
+        queue.drainTo(batch);
+        try {
+            for (Record record : batch) {
+                if (writer == null) {
+                    open();
+                }
+                record.write(writer);
+            }
+            writer.flush();
+            if (stream.count >= maxBytes) {
+                roll();
+            }
+        } catch (IOException e) {
+            Sentry.captureException(e);
+            log.error("Failed to write {} changes to the feed", batch.size(), e);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            log.log(Level.ERROR, "Failed to flush change feed", e);
+        }
+    }
+
+    void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+        do {
+            file = new File(directory, "changes-" + run + "-" + (seq++) + ".ndjson");
+        } while (file.exists());// a resumed run keeps the files it already finished
+        stream = new CountingOutputStream(new FileOutputStream(part(file)));
+        writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * Completes the current file, if any
+     */
+    synchronized void roll() {
+        if (writer == null) {return;}
+        try {
+            writer.close();
+            Files.move(part(file).toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Sentry.captureException(e);
+            log.warn("Failed to complete {}", file, e);
+        }
+        writer = null;
+        stream = null;
+    }
+
+    static File part(File file) {
+        return new File(file.getPath() + ".part");
+    }
+
+    /**
+     * Writes what's left, completes the run's last file and returns the run's changes
+     *
+     * @return number of changes by <code>entity.field</code>
+     */
+    public synchronized Document end() {
+        flush();
+        roll();
+        Document report = new Document();
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counts).entrySet()) {
+            report.append(entry.getKey(), entry.getValue().sum());
+        }
+        return report;
+    }
+
+    public void close() {
+        scheduler.shutdown();
+        flush();
+        roll();
+    }
+
+    static class Record {
+
+        final long ts;
+        final long run;
+        final String entity;
+        final int id;
+        final String field;
+        final Object oldValue;
+        final Object newValue;
+
+        Record(long ts, long run, String entity, int id, String field, Object oldValue, Object newValue) {
+            this.ts = ts;
+            this.run = run;
+            this.entity = entity;
+            this.id = id;
+            this.field = field;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        void write(Writer out) throws IOException {
+            JsonWriter json = new JsonWriter(out);
+            json.beginObject()
+                    .name("ts").value(ts)
+                    .name("run").value(run)
+                    .name("entity").value(entity)
+                    .name("id").value(id)
+                    .name("field").value(field);
+            value(json.name("old"), oldValue);
+            value(json.name("new"), newValue);
+            json.endObject();
+            out.write('\n');
+        }
+
+    }
+
+    static void value(JsonWriter json, Object value) throws IOException {
+        if (value == null) {
+            json.nullValue();
+        } else if (value instanceof Boolean) {
+            json.value((Boolean) value);
+        } else if (value instanceof Number && Double.isFinite(((Number) value).doubleValue())) {
+            json.value((Number) value);
+        } else {
+            json.value(String.valueOf(value));
+        }
+    }
+
+    static class CountingOutputStream extends FilterOutputStream {
+
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+    }
+
+}
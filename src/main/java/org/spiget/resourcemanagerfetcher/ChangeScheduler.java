@@ -0,0 +1,123 @@
+package org.spiget.resourcemanagerfetcher;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides how long to wait before checking a resource again, based on what the last check found.
+ * <p>
+ * Resources with version or rating changes are checked more often, resources where nothing changed back off
+ * exponentially, so the rate-limited request budget goes to the resources that actually change. Everything here is a
+ * pure function of the recorded history, so schedules can be replayed offline with {@link #replay(long, List)}.
+ */
+public class ChangeScheduler {
+
+    public enum Activity {
+        /**
+         * Nothing changed
+         */
+        QUIET,
+        /**
+         * Something other than the version or rating changed, or downloads grew by at least the threshold
+         */
+        ACTIVE,
+        /**
+         * Version or rating changed
+         */
+        HOT
+    }
+
+    private final long minInterval;
+    private final long defaultInterval;
+    private final long maxInterval;
+    private final int activeDownloads;
+
+    /**
+     * @param activeDownloads downloads a resource has to gain between two checks to count as {@link Activity#ACTIVE}
+     *                        when nothing else changed
+     */
+    public ChangeScheduler(long minInterval, long defaultInterval, long maxInterval, int activeDownloads) {
+        if (minInterval <= 0 || minInterval > defaultInterval || defaultInterval > maxInterval) {
+            throw new IllegalArgumentException("Expected 0 < min <= default <= max interval");
+        }
+        this.minInterval = minInterval;
+        this.defaultInterval = defaultInterval;
+        this.maxInterval = maxInterval;
+        this.activeDownloads = Math.max(1, activeDownloads);
+    }
+
+    /**
+     * @return the scheduler configured by the <code>schedule.*</code> keys
+     */
+    public static ChangeScheduler fromConfig(FetcherConfig config) {
+        return new ChangeScheduler(
+                config.getLong("schedule.minInterval", 21600000/*6h*/),
+                config.getLong("schedule.defaultInterval", 86400000/*24h*/),
+                config.getLong("schedule.maxInterval", 1209600000/*14d*/),
+                config.getInt("schedule.activeDownloads", 10));
+    }
+
+    /**
+     * @return interval of resources that were never scheduled
+     */
+    public long getDefaultInterval() {
+        return defaultInterval;
+    }
+
+    /**
+     * @param changes what a check found, <code>null</code> if nothing changed
+     */
+    public Activity classify(@Nullable Changes changes) {
+        if (changes == null) {return Activity.QUIET;}
+        if (changes.getUpdateReason() != null) {return Activity.HOT;}
+        for (Changes.Change change : changes.getChanges()) {
+            if (!"downloads".equals(change.field) || downloadsDelta(change) >= activeDownloads) {
+                return Activity.ACTIVE;
+            }
+        }
+        return Activity.QUIET;
+    }
+
+    static long downloadsDelta(Changes.Change change) {
+        if (!(change.oldValue instanceof Number) || !(change.newValue instanceof Number)) {return Long.MAX_VALUE;}
+        return Math.abs(((Number) change.newValue).longValue() - ((Number) change.oldValue).longValue());
+    }
+
+    /**
+     * @param current  interval used for the check that just happened, or <code>0</code> if the resource was never scheduled
+     * @param activity what the check found
+     * @return interval until the next check
+     */
+    public long nextInterval(long current, Activity activity) {
+        if (current <= 0) {
+            current = defaultInterval;
+        }
+        switch (activity) {
+            case HOT:
+                current = current / 2;
+                break;
+            case QUIET:
+                current = current * 2;
+                break;
+            default:
+                break;
+        }
+        return Math.max(minInterval, Math.min(maxInterval, current));
+    }
+
+    /**
+     * @return the intervals that would be chosen after each entry of the history
+     */
+    public List<Long> replay(long initial, List<Activity> history) {
+        List<Long> intervals = new ArrayList<>(history.size());
+        long interval = initial;
+        for (Activity activity : history) {
+            interval = nextInterval(interval, activity);
+            intervals.add(interval);
+        }
+        return intervals;
+    }
+
+}
@@ -0,0 +1,70 @@
+package org.spiget.resourcemanagerfetcher;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of comparing a SpigotMC payload with the database: the changed fields and the <code>$set</code> that applies them.
+ */
+public class Changes {
+
+    final List<Change> changes = new ArrayList<>(4);
+    final Document set = new Document();
+
+    /**
+     * Reason to request a full update from the main fetcher, or <code>null</code>
+     */
+    String updateReason;
+
+    /**
+     * Record a changed field without writing it (e.g. the version, which the main fetcher updates)
+     */
+    void change(String field, Object oldValue, Object newValue) {
+        changes.add(new Change(field, oldValue, newValue));
+    }
+
+    void change(String field, Object oldValue, Object newValue, Document set) {
+        change(field, oldValue, newValue);
+        this.set.putAll(set);
+    }
+
+    void requestUpdate(String reason) {
+        this.updateReason = reason;
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return the fields to <code>$set</code>, empty if nothing has to be written
+     */
+    public Document getSet() {
+        return set;
+    }
+
+    public String getUpdateReason() {
+        return updateReason;
+    }
+
+    public boolean isModified() {
+        return !set.isEmpty();
+    }
+
+    public static class Change {
+
+        public final String field;
+        public final Object oldValue;
+        public final Object newValue;
+
+        Change(String field, Object oldValue, Object newValue) {
+            this.field = field;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+    }
+
+}
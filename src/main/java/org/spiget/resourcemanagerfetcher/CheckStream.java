@@ -0,0 +1,407 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.stream.JsonReader;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import io.sentry.Sentry;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.Level;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the checks of one {@link Checker} over the claimed partitions: pages through the due documents with a keyset
+ * cursor, sends the requests within its own share of the request rate and applies the resulting changes.
+ * <p>
+ * Each stream has its own rate limiter, throttle breaker, retry queue and in-flight limit, so streams run in parallel
+ * without one entity type starving the other. Workers, the API client and the write batcher are shared.
+ */
+@Log4j2
+public class CheckStream<T, P> {
+
+    private final SpigetRestFetcher fetcher;
+    private final Checker<T, P> checker;
+    private final String type;
+    private final int threads;
+
+    final RateLimiter rateLimiter;
+    final ThrottleBreaker breaker;
+    final RetryQueue retries;
+    private final Semaphore inFlight;
+
+    private PartitionLeases.Partition partition;
+    private KeysetCursor cursor;
+
+    public CheckStream(SpigetRestFetcher fetcher, Checker<T, P> checker, RateLimiter rateLimiter, ThrottleBreaker breaker, RetryQueue retries, int threads) {
+        this.fetcher = fetcher;
+        this.checker = checker;
+        this.type = checker.getType();
+        this.threads = threads;
+        this.rateLimiter = rateLimiter;
+        this.breaker = breaker;
+        this.retries = retries;
+        this.inFlight = new Semaphore(threads);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Checker<T, P> getChecker() {
+        return checker;
+    }
+
+    public long countDue(long startTime) {
+        return checker.getCollection().countDocuments(checker.dueFilter(startTime));
+    }
+
+    /**
+     * Creates the index the due filter scans, in the order pages are read
+     */
+    public void ensureIndex() {
+        try {
+            checker.getCollection().createIndex(Indexes.ascending("fetch.restDue", "_id"));
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            log.warn("Failed to create due index for {}s", type, e);
+        }
+    }
+
+    /**
+     * Sets <code>fetch.restDue</code> on documents that don't have it yet, e.g. ones the main fetcher just added, so the
+     * due filter finds them
+     */
+    public void backfillDue() {
+        int count = 0;
+        for (Document document : checker.getCollection()
+                .find(Filters.eq("fetch.restDue", null))
+                .projection(checker.getProjection())) {
+            T item = checker.decode(document);
+            SpigetRestFetcher.writes.set(checker.getCollection(), checker.getId(item), new Document("fetch.restDue", checker.getLastFetched(item) + checker.getInterval(item)));
+            count++;
+        }
+        SpigetRestFetcher.writes.flush();
+        if (count > 0) {
+            log.info("Backfilled due times of {} {}s", count, type);
+        }
+    }
+
+    /**
+     * Processes the partition page by page until nothing is due anymore or the lease is lost
+     *
+     * @param start number of the first page, only used for logging
+     */
+    public void run(PartitionLeases.Partition partition, int start) {
+        this.partition = partition;
+        this.cursor = new KeysetCursor("fetch.rest.cursor." + type + partition.suffix(), checker.getSortField());
+        if (partition.isResume()) {
+            try {
+                cursor.load(SpigetRestFetcher.databaseClient);
+                log.info("Resuming {}s of partition {} after {}", type, partition, cursor);
+            } catch (Exception e) {
+                Sentry.captureException(e);
+                log.warn("Failed to load {} cursor of partition {}", type, partition, e);
+            }
+        }
+
+        long planned = countPlanned();
+        log.info("{} {}s due in partition {}, planning {} pages", planned, type, partition, (planned + fetcher.itemsPerFetch - 1) / fetcher.itemsPerFetch);
+
+        int n = start;
+        while (planned > 0 && partition.isHeld()) {
+            int c = fetchPage(n);
+            planned -= c;
+            if (c < fetcher.itemsPerFetch) {break;}
+            n++;
+        }
+    }
+
+    /**
+     * @return number of due items left in the partition, or {@link Long#MAX_VALUE} if they can't be counted
+     */
+    long countPlanned() {
+        try {
+            return checker.getCollection().countDocuments(Filters.and(partition.filter(), cursor.filter(), checker.dueFilter(fetcher.startTime)));
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            log.warn("Failed to count due {}s of partition {}", type, partition, e);
+            return Long.MAX_VALUE;
+        }
+    }
+
+    int fetchPage(int n) {
+        log.debug("Running {} fetch #{}", type, n);
+        int c = 0;
+
+        try {
+            long updateStart = System.currentTimeMillis();
+            SpigetRestFetcher.databaseClient.updateStatus("fetch.rest." + type + ".n.start", updateStart);
+
+            long cursorStart = System.nanoTime();
+            List<T> page = new ArrayList<>(fetcher.itemsPerFetch);
+            for (Document document : checker.getCollection()
+                    .find(Filters.and(partition.filter(), cursor.filter(), checker.dueFilter(fetcher.startTime)))
+                    .projection(checker.getProjection())
+                    .sort(cursor.sort())
+                    .limit(fetcher.itemsPerFetch)) {
+                cursor.advance(document);
+                page.add(checker.decode(document));
+            }
+            checker.preparePage(page);
+            fetcher.pipeline.record(PipelineMetrics.Stage.CURSOR, cursorStart);
+
+            fetcher.progress.setPage(n);
+            for (T item : page) {
+                if (!partition.isHeld()) {break;}
+                c++;
+                long due = checker.getLastFetched(item) + checker.getInterval(item);
+                if (due > fetcher.startTime) {// the main fetcher got to it since its due time was set
+                    SpigetRestFetcher.writes.set(checker.getCollection(), checker.getId(item), new Document("fetch.restDue", due));
+                    fetcher.progress.itemProcessed();
+                    continue;
+                }
+                if (SpigetRestFetcher.journal != null && SpigetRestFetcher.journal.isDone(type, checker.getId(item))) {// checked before a restart
+                    fetcher.progress.itemProcessed();
+                    continue;
+                }
+
+                fetcher.progress.setItem(c);
+                dispatch(new FetchTask(type, checker.getId(item), () -> checker.request(fetcher.apiClient, item), response -> check(item, response), () -> postpone(item)));
+                dispatchDueRetries();
+            }
+
+            drainRetries();
+            SpigetRestFetcher.metrics.writeBreaker(type, breaker, rateLimiter.getRate(), retries.size());
+            SpigetRestFetcher.writes.flush();
+
+            long updateEnd = System.currentTimeMillis();
+            try {
+                if (partition.isHeld()) {// otherwise the new owner continues from the last saved position
+                    long statusStart = System.nanoTime();
+                    cursor.save(SpigetRestFetcher.databaseClient);
+                    fetcher.pipeline.record(PipelineMetrics.Stage.STATUS_WRITE, statusStart);
+                }
+                SpigetRestFetcher.databaseClient.updateStatus("fetch.rest." + type + ".n.end", updateEnd);
+                SpigetRestFetcher.databaseClient.updateStatus("fetch.rest." + type + ".n.duration", (updateEnd - updateStart));
+            } catch (Exception e) {
+                Sentry.captureException(e);
+                log.log(Level.ERROR, "Failed to update status", e);
+            }
+
+            log.info("Finished {} fetch #{}. Took {}s to update {} {}s.", type, n, (updateEnd - updateStart) / 1000, c, type);
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            log.error("Exception in {} fetch #{}", type, n, e);
+        }
+
+        return c;
+    }
+
+    /**
+     * Checks the response, or postpones the item if it can't be checked, so it leaves the due range either way
+     */
+    void check(T item, SpigotApiClient.Response response) {
+        int id = checker.getId(item);
+        try {
+            if (response == null) {
+                postpone(item);
+                return;
+            }
+            if (response.code != 200) {
+                log.warn("Got Code {} for {} #{}", response.code, type, id);
+                if (response.code == 503) {// Cloudflare
+                } else if (response.code == 404) {// not found
+                    log.info("Scheduling {} #{} for deletion", type, id);
+                    checker.notFound(item);
+                } else {
+                    log.error("Unexpected status code {} for {} #{}", response.code, type, id);
+                }
+                postpone(item);
+                return;
+            }
+            long decodeStart = System.nanoTime();
+            P payload;
+            try (JsonReader reader = response.reader()) {
+                payload = checker.read(reader);
+            }
+            fetcher.pipeline.record(PipelineMetrics.Stage.DECODE, decodeStart);
+            if (payload == null) {
+                log.warn("Expected response for {} #{} to be a json object but was not", type, id);
+                postpone(item);
+                return;
+            }
+            check(item, payload);
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            log.warn("Exception while trying to check {} #{}", type, id, e);
+            postpone(item);
+        }
+    }
+
+    void check(T item, P payload) {
+        check(item, payload, true);
+    }
+
+    /**
+     * @param due whether the item was due, so its next check is scheduled; items checked early, e.g. from a listing,
+     *            keep their schedule
+     */
+    void check(T item, P payload, boolean due) {
+        int id = checker.getId(item);
+        boolean scheduled = false;
+        try {
+            long digest = checker.digest(payload);
+            if (digest != 0 && digest == checker.digest(item, payload)) {
+                fetcher.countDigest(type, "unchanged");
+                fetcher.applyChanges(type, checker.getCollection(), id, new Changes());
+                if (due) {
+                    checker.schedule(item, null);
+                    scheduled = true;
+                }
+                checker.checked(item, null);
+                checker.putLastDigest(id, digest);
+                return;
+            }
+            fetcher.countDigest(type, digest != 0 && digest == checker.getLastDigest(id) ? "dbMismatch" : "changed");
+
+            Changes changes = checker.compare(item, payload);
+            for (Changes.Change change : changes.getChanges()) {
+                ChangeEvents.changed(type, id, change);
+            }
+            fetcher.applyChanges(type, checker.getCollection(), id, changes);
+            if (due) {
+                checker.schedule(item, changes);
+                scheduled = true;
+            }
+            checker.checked(item, changes);
+            if (digest != 0) {
+                checker.putLastDigest(id, digest);
+            }
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            log.warn("Exception while trying to check {} #{}", type, id, e);
+            if (due && !scheduled) {
+                postpone(item);
+            }
+        }
+    }
+
+    /**
+     * Moves an item that couldn't be checked out of the due range until its next regular check, keeping its interval.
+     * Otherwise it would stay at the head of the due range and be requested again on every page.
+     */
+    void postpone(T item) {
+        SpigetRestFetcher.writes.set(checker.getCollection(), checker.getId(item), new Document("fetch.restDue", System.currentTimeMillis() + checker.getInterval(item)));
+    }
+
+    /**
+     * Sends the request once the rate limit allows it and hands the response to a worker.
+     * Blocks while {@link #threads} items are in flight, so the cursor isn't read ahead too far.
+     * <p>
+     * Failed requests, missing responses and throttled (Cloudflare 503, 429) responses are queued for a retry instead of being handed to the check.
+     */
+    void dispatch(FetchTask task) {
+        inFlight.acquireUninterruptibly();
+        try {
+            rateLimiter.acquire();
+            fetcher.requestSent();
+            task.request.get().handleAsync((response, throwable) -> {
+                boolean queued = false;
+                try {
+                    if (response != null) {
+                        fetcher.pipeline.countResponse(response.code);
+                    }
+                    boolean throttled = response != null && (response.code == 503 || response.code == 429);
+                    boolean failed = throwable != null || response == null || throttled;
+                    breaker.record(throttled);
+                    if (failed) {
+                        if (throwable != null) {
+                            log.warn("Request for {} failed", task, throwable);
+                        }
+                        queued = retry(task);
+                    } else {
+                        long compareStart = System.nanoTime();
+                        task.handler.accept(response);
+                        fetcher.pipeline.record(PipelineMetrics.Stage.COMPARE, compareStart);
+                        if (SpigetRestFetcher.journal != null) {
+                            SpigetRestFetcher.journal.done(task.type, task.id);
+                        }
+                    }
+                } finally {
+                    if (!queued) {// a queued retry is counted once it reaches its outcome
+                        fetcher.progress.itemProcessed();
+                        fetcher.pipeline.countItem();
+                    }
+                    inFlight.release();
+                }
+                return null;
+            }, fetcher.workers);
+        } catch (InterruptedException e) {
+            inFlight.release();
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the task was queued for another attempt, <code>false</code> if it was given up
+     */
+    boolean retry(FetchTask task) {
+        if (retries.offer(task)) {
+            SpigetRestFetcher.metrics.countRetry(task.type, "queued");
+            return true;
+        }
+        log.warn("Giving up on {} after {} attempts", task, task.attempt);
+        SpigetRestFetcher.metrics.countRetry(task.type, task.attempt >= fetcher.maxAttempts ? "exhausted" : "dropped");
+        task.abandon.run();
+        return false;
+    }
+
+    void dispatchDueRetries() {
+        FetchTask task;
+        while ((task = retries.pollDue()) != null) {
+            dispatch(task);
+        }
+    }
+
+    /**
+     * Dispatches queued retries as their backoff passes, until nothing is queued or in flight anymore.
+     */
+    void drainRetries() {
+        while (true) {
+            try {
+                FetchTask task = retries.poll(100, TimeUnit.MILLISECONDS);
+                if (task != null) {
+                    dispatch(task);
+                } else if (retries.isEmpty() && inFlight.availablePermits() == threads) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                awaitIdle();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits until all dispatched tasks have finished.
+     */
+    void awaitIdle() {
+        inFlight.acquireUninterruptibly(threads);
+        inFlight.release(threads);
+    }
+
+    public Document toDocument() {
+        return new Document("breaker", breaker.getState().name())
+                .append("rate", rateLimiter.getRate())
+                .append("retries", retries.size());
+    }
+
+}
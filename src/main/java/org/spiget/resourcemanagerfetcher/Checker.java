@@ -0,0 +1,113 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.stream.JsonReader;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Entity specific part of a check: which documents are due, how to request them from SpigotMC and how to compare the
+ * response. Cursoring, rate limiting, retries, digests and writes are handled by {@link CheckStream}.
+ *
+ * @param <T> snapshot of the stored document
+ * @param <P> fields of the SpigotMC payload
+ */
+public interface Checker<T, P> {
+
+    /**
+     * @return entity name, used for status keys, metrics and logs
+     */
+    String getType();
+
+    MongoCollection<Document> getCollection();
+
+    /**
+     * @param startTime start of the current cycle
+     * @return filter for the documents due for a check, an indexed range on <code>fetch.restDue</code>
+     */
+    default Bson dueFilter(long startTime) {
+        return Filters.lt("fetch.restDue", startTime);
+    }
+
+    /**
+     * @return field to page by before <code>_id</code>, or <code>null</code> to page by <code>_id</code> only
+     */
+    @Nullable
+    String getSortField();
+
+    Bson getProjection();
+
+    T decode(Document document);
+
+    /**
+     * Load anything the checks of a page need in bulk, before its requests are sent
+     */
+    default void preparePage(List<T> page) {
+    }
+
+    int getId(T item);
+
+    /**
+     * @return when this or the main fetcher last fetched the item, or <code>0</code> if never
+     */
+    long getLastFetched(T item);
+
+    /**
+     * @return time between checks of the item, so <code>fetch.restDue</code> is {@link #getLastFetched(Object)} plus this
+     */
+    long getInterval(T item);
+
+    CompletableFuture<SpigotApiClient.Response> request(SpigotApiClient client, T item);
+
+    /**
+     * Streams the payload into the calling thread's holder, which stays valid until its next read
+     *
+     * @return the payload, or <code>null</code> if the response isn't an object
+     */
+    @Nullable
+    P read(JsonReader in) throws IOException;
+
+    /**
+     * @return digest of the stored document, comparable to {@link #digest(Object)}, or <code>0</code> if unknown
+     */
+    long digest(T item, P payload);
+
+    /**
+     * @return digest of the SpigotMC payload, or <code>0</code> if unknown
+     */
+    long digest(P payload);
+
+    long getLastDigest(int id);
+
+    void putLastDigest(int id, long digest);
+
+    Changes compare(T item, P payload);
+
+    /**
+     * Called when SpigotMC doesn't know the entity anymore
+     */
+    void notFound(T item);
+
+    /**
+     * Called after a successful check, once the changes are queued
+     *
+     * @param changes the changes written, or <code>null</code> if the digest showed nothing changed
+     */
+    default void checked(T item, @Nullable Changes changes) {
+    }
+
+    /**
+     * Sets when the item is due next, called after a successful check of an item that was due
+     *
+     * @param changes the changes written, or <code>null</code> if the digest showed nothing changed
+     */
+    default void schedule(T item, @Nullable Changes changes) {
+    }
+
+}
@@ -0,0 +1,69 @@
+package org.spiget.resourcemanagerfetcher;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Last seen {@link ChangeDigest} of each resource's and author's SpigotMC payload, snapshotted to a local file between runs.
+ */
+@Log4j2
+public class DigestStore {
+
+    private static final int MAGIC = 0x53444731;// SDG1
+
+    private final File file;
+
+    private IntLongMap resources = new IntLongMap(1024);
+    private IntLongMap authors = new IntLongMap(1024);
+
+    public DigestStore(File file) {
+        this.file = file;
+    }
+
+    public synchronized long getResource(int id) {
+        return resources.get(id, 0);
+    }
+
+    public synchronized void putResource(int id, long digest) {
+        resources.put(id, digest);
+    }
+
+    public synchronized long getAuthor(int id) {
+        return authors.get(id, 0);
+    }
+
+    public synchronized void putAuthor(int id, long digest) {
+        authors.put(id, digest);
+    }
+
+    public void load() throws IOException {
+        if (!file.exists()) {return;}
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                log.warn("Ignoring digest snapshot {} with unknown format", file);
+                return;
+            }
+            IntLongMap resources = IntLongMap.read(in);
+            IntLongMap authors = IntLongMap.read(in);
+            synchronized (this) {
+                this.resources = resources;
+                this.authors = authors;
+            }
+            log.info("Loaded {} resource and {} author digests", resources.size(), authors.size());
+        }
+    }
+
+    public synchronized void save() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            resources.write(out);
+            authors.write(out);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
@@ -0,0 +1,128 @@
+package org.spiget.resourcemanagerfetcher;
+
+import io.sentry.Sentry;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.Level;
+import org.bson.Document;
+import org.spiget.database.DatabaseClient;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory progress of the current run, published to the status collection as a single
+ * <code>fetch.rest.progress</code> document on a fixed interval instead of on every item.
+ * <p>
+ * The legacy <code>fetch.rest.type</code>, <code>num</code>, <code>item</code> and <code>item.max</code> keys are
+ * still written alongside it, on the same interval, for existing status consumers.
+ */
+@Log4j2
+public class FetchProgress {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "progress-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> publisher;
+
+    private final PipelineMetrics pipeline;
+
+    private volatile String type = "resource";
+    private final AtomicInteger page = new AtomicInteger();
+    private final AtomicInteger item = new AtomicInteger();
+    private final AtomicLong processed = new AtomicLong();
+    private volatile int itemMax;
+    private volatile long total;
+    private volatile long startTime;
+
+    public FetchProgress(PipelineMetrics pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public void start(long total, int itemMax) {
+        this.total = total;
+        this.itemMax = itemMax;
+        this.startTime = System.currentTimeMillis();
+        this.processed.set(0);
+        this.item.set(0);
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public void setPage(int page) {
+        this.page.set(page);
+        this.item.set(0);
+    }
+
+    public void setItem(int item) {
+        this.item.set(item);
+    }
+
+    public void itemProcessed() {
+        processed.incrementAndGet();
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    public double getItemsPerSecond() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        if (elapsed <= 0) {return 0;}
+        return processed.get() / (elapsed / 1000.0);
+    }
+
+    public Document toDocument() {
+        long done = processed.get();
+        long remaining = Math.max(0, total - done);
+        double itemsPerSecond = getItemsPerSecond();
+        return new Document("type", type)
+                .append("num", page.get())
+                .append("item", item.get())
+                .append("itemMax", itemMax)
+                .append("processed", done)
+                .append("total", total)
+                .append("remaining", remaining)
+                .append("itemsPerSecond", itemsPerSecond)
+                .append("eta", itemsPerSecond > 0 ? System.currentTimeMillis() + (long) (remaining / itemsPerSecond * 1000) : null)
+                .append("updated", System.currentTimeMillis());
+    }
+
+    public void publish(DatabaseClient databaseClient) {
+        long start = System.nanoTime();
+        try {
+            Document progress = toDocument();
+            databaseClient.updateStatus("fetch.rest.progress", progress);
+            databaseClient.updateStatus("fetch.rest.type", progress.get("type"));
+            databaseClient.updateStatus("fetch.rest.num", progress.get("num"));
+            databaseClient.updateStatus("fetch.rest.item", progress.get("item"));
+            databaseClient.updateStatus("fetch.rest.item.max", progress.get("itemMax"));
+            pipeline.record(PipelineMetrics.Stage.STATUS_WRITE, start);
+            // sampled progress instead of a line per item
+            log.info("Progress: {}/{} items, {} items/s, page {}", progress.get("processed"), progress.get("total"), progress.get("itemsPerSecond"), progress.get("num"));
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            log.log(Level.WARN, "Failed to publish progress", e);
+        }
+    }
+
+    public void startPublishing(DatabaseClient databaseClient, long intervalMillis) {
+        stopPublishing();
+        publisher = scheduler.scheduleWithFixedDelay(() -> publish(databaseClient), 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stopPublishing() {
+        if (publisher != null) {
+            publisher.cancel(false);
+            publisher = null;
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package org.spiget.resourcemanagerfetcher;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A single SpigotMC request and the check to run on its response, re-dispatchable through the {@link RetryQueue}.
+ */
+public class FetchTask implements Delayed {
+
+    final String type;
+    final int id;
+    final Supplier<CompletableFuture<SpigotApiClient.Response>> request;
+    final Consumer<SpigotApiClient.Response> handler;
+    /**
+     * Run when the task is given up without a response to check
+     */
+    final Runnable abandon;
+
+    int attempt;
+    long dueAt;
+
+    public FetchTask(String type, int id, Supplier<CompletableFuture<SpigotApiClient.Response>> request, Consumer<SpigotApiClient.Response> handler, Runnable abandon) {
+        this.type = type;
+        this.id = id;
+        this.request = request;
+        this.handler = handler;
+        this.abandon = abandon;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(dueAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed o) {
+        return Long.compare(dueAt, ((FetchTask) o).dueAt);
+    }
+
+    @Override
+    public String toString() {
+        return type + " #" + id;
+    }
+
+}
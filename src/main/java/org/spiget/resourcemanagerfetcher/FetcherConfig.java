@@ -0,0 +1,164 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Typed view of <code>config.json</code>: getters with the default used when a key is missing, and
+ * {@link #validate()} to report every problem at once before anything is started.
+ */
+public class FetcherConfig {
+
+    private final JsonObject json;
+
+    public FetcherConfig(JsonObject json) {
+        this.json = json;
+    }
+
+    public static FetcherConfig load(File file) throws IOException {
+        try (Reader reader = new FileReader(file)) {
+            return new FetcherConfig(new JsonParser().parse(reader).getAsJsonObject());
+        }
+    }
+
+    public JsonObject getJson() {
+        return json;
+    }
+
+    public boolean has(String key) {
+        return json.has(key) && !json.get(key).isJsonNull();
+    }
+
+    public String getString(String key, String def) {
+        return has(key) ? json.get(key).getAsString() : def;
+    }
+
+    public int getInt(String key, int def) {
+        return has(key) ? json.get(key).getAsInt() : def;
+    }
+
+    public long getLong(String key, long def) {
+        return has(key) ? json.get(key).getAsLong() : def;
+    }
+
+    public double getDouble(String key, double def) {
+        return has(key) ? json.get(key).getAsDouble() : def;
+    }
+
+    public boolean getBoolean(String key, boolean def) {
+        return has(key) ? json.get(key).getAsBoolean() : def;
+    }
+
+    @Nullable
+    public Integer getInteger(String key) {
+        return has(key) ? json.get(key).getAsInt() : null;
+    }
+
+    public String getUserAgent() {
+        return getString("request.userAgent", "SpigetRestFetcher");
+    }
+
+    public boolean isLogConnections() {
+        return getBoolean("debug.connections", false);
+    }
+
+    /**
+     * @return <code>http</code>, <code>legacy</code> or <code>replay</code>
+     */
+    public String getClient() {
+        return getString("request.client", "http");
+    }
+
+    public int getDatabaseTimeout() {
+        return getInt("database.timeout", 3000);
+    }
+
+    /**
+     * @return a description of each problem, empty if the config is usable
+     */
+    public List<String> validate() {
+        List<String> problems = new ArrayList<>();
+        required(problems, "metrics.url", "metrics.user", "metrics.password", "database.name");
+        if (!has("database.url")) {
+            required(problems, "database.host", "database.port", "database.user", "database.pass", "database.db");
+        }
+        if (!Arrays.asList("http", "legacy", "replay").contains(getClient())) {
+            problems.add("request.client must be http, legacy or replay, was " + getClient());
+        }
+
+        positive(problems, "fetch.rate", "fetch.pause", "fetch.threads", "database.itemsPerFind", "database.batchSize",
+                "database.flushInterval", "database.timeout", "retry.maxAttempts", "retry.queueSize", "shard.partitions",
+                "shard.leaseTtl", "journal.syncInterval", "feed.maxBytes", "feed.batchSize", "schedule.authorInterval",
+                "schedule.activeDownloads", "startup.attempts");
+        ratio(problems, "fetch.share.resource", "fetch.share.author", "breaker.tripRatio", "breaker.recoverRatio", "breaker.minFactor");
+        number(problems, "fetch.start", "status.interval", "daemon.interval", "health.port", "health.maxAge", "bulk.maxPages",
+                "bulk.category", "retry.baseDelay", "retry.maxDelay", "request.timeout", "replay.scale", "replay.latency", "replay.jitter", "replay.randomSeed",
+                "startup.baseDelay", "startup.maxDelay");
+
+        try {
+            long min = getLong("schedule.minInterval", 21600000);
+            long def = getLong("schedule.defaultInterval", 86400000);
+            long max = getLong("schedule.maxInterval", 1209600000);
+            if (min <= 0 || min > def || def > max) {
+                problems.add("schedule intervals must satisfy 0 < minInterval <= defaultInterval <= maxInterval");
+            }
+        } catch (RuntimeException e) {
+            problems.add("schedule intervals must be numbers");
+        }
+        return problems;
+    }
+
+    void required(List<String> problems, String... keys) {
+        for (String key : keys) {
+            if (!has(key)) {
+                problems.add(key + " is missing");
+            }
+        }
+    }
+
+    void positive(List<String> problems, String... keys) {
+        for (String key : keys) {
+            Double value = number(problems, key);
+            if (value != null && value <= 0) {
+                problems.add(key + " must be positive, was " + value);
+            }
+        }
+    }
+
+    void ratio(List<String> problems, String... keys) {
+        for (String key : keys) {
+            Double value = number(problems, key);
+            if (value != null && (value < 0 || value > 1)) {
+                problems.add(key + " must be between 0 and 1, was " + value);
+            }
+        }
+    }
+
+    void number(List<String> problems, String... keys) {
+        for (String key : keys) {
+            number(problems, key);
+        }
+    }
+
+    @Nullable
+    Double number(List<String> problems, String key) {
+        if (!has(key)) {return null;}
+        JsonElement value = json.get(key);
+        if (!value.isJsonPrimitive() || !value.getAsJsonPrimitive().isNumber()) {
+            problems.add(key + " must be a number, was " + value);
+            return null;
+        }
+        return value.getAsDouble();
+    }
+
+}
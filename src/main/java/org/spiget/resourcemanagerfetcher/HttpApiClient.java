@@ -0,0 +1,98 @@
+package org.spiget.resourcemanagerfetcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Non-blocking {@link SpigotApiClient} on {@link HttpClient}, reusing connections (HTTP/2 where the server supports it)
+ * and requesting gzip-compressed responses. Bodies are received in full as bytes before the response completes; the
+ * checks then pull the few fields they need out of them.
+ */
+public class HttpApiClient implements SpigotApiClient {
+
+    private final String baseUrl;
+    private final String userAgent;
+    private final Duration timeout;
+    private final HttpClient client;
+    private final PipelineMetrics pipeline;
+
+    public HttpApiClient(String baseUrl, String userAgent, Duration timeout, Executor executor, PipelineMetrics pipeline) {
+        this.pipeline = pipeline;
+        this.baseUrl = baseUrl;
+        this.userAgent = userAgent;
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(timeout)
+                .executor(executor)
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<Response> getResource(int id) {
+        return get("action=getResource&id=" + id);
+    }
+
+    @Override
+    public CompletableFuture<Response> getAuthor(int id) {
+        return get("action=getAuthor&id=" + id);
+    }
+
+    @Override
+    public CompletableFuture<Response> listResources(Integer category, int page) {
+        return get(SpigotApiClient.listQuery(category, page));
+    }
+
+    CompletableFuture<Response> get(String query) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "?" + query))
+                .timeout(timeout)
+                .header("User-Agent", userAgent)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .GET()
+                .build();
+        long start = System.nanoTime();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    pipeline.record(PipelineMetrics.Stage.HTTP, start);
+                    return read(response);
+                });
+    }
+
+    /**
+     * The body is already complete here, so this never waits on the connection and can't starve the executor the
+     * client delivers bodies on
+     */
+    static Response read(HttpResponse<byte[]> response) {
+        if (response.statusCode() != 200) {
+            return new Response(response.statusCode());
+        }
+        try {
+            // kept as raw bytes and only decoded by the check's JsonReader, so no String copy of the body is made
+            return new Response(response.statusCode(), decode(response));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static byte[] decode(HttpResponse<byte[]> response) throws IOException {
+        if (response.headers().firstValue("Content-Encoding").map("gzip"::equalsIgnoreCase).orElse(false)) {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+                return in.readAllBytes();
+            }
+        }
+        return response.body();
+    }
+
+}
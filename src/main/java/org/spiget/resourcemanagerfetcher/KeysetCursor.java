@@ -0,0 +1,106 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.spiget.database.DatabaseClient;
+
+import java.util.Objects;
+
+/**
+ * Keyset position over a find sorted by {@code (sortField, _id)}, or by {@code _id} alone.
+ * <p>
+ * Unlike skip-based paging, each page only depends on the last document seen, so pages cost the same regardless of depth
+ * and documents that drop out of the filter after being processed don't shift the following pages.
+ */
+public class KeysetCursor {
+
+    private final String statusKey;
+    private final String sortField;
+
+    private Object lastSort;
+    private Object lastId;
+
+    /**
+     * @param statusKey key in the status collection to persist the position under
+     * @param sortField field to sort by before <code>_id</code>, or <code>null</code> to sort by <code>_id</code> only
+     */
+    public KeysetCursor(String statusKey, String sortField) {
+        this.statusKey = statusKey;
+        this.sortField = sortField;
+    }
+
+    public Bson sort() {
+        if (sortField == null) {
+            return new Document("_id", 1);
+        }
+        return new Document(sortField, 1).append("_id", 1);
+    }
+
+    /**
+     * @return filter selecting everything after the last seen document
+     */
+    public Bson filter() {
+        if (lastId == null) {
+            return new Document();
+        }
+        if (sortField == null) {
+            return Filters.gt("_id", lastId);
+        }
+        if (lastSort == null) {// nulls sort first
+            return Filters.or(
+                    Filters.ne(sortField, null),
+                    Filters.and(Filters.eq(sortField, null), Filters.gt("_id", lastId))
+            );
+        }
+        return Filters.or(
+                Filters.gt(sortField, lastSort),
+                Filters.and(Filters.eq(sortField, lastSort), Filters.gt("_id", lastId))
+        );
+    }
+
+    public void advance(Document document) {
+        lastId = document.get("_id");
+        if (sortField != null) {
+            lastSort = value(document, sortField);
+        }
+    }
+
+    static Object value(Document document, String path) {
+        Object value = document;
+        for (String key : path.split("\\.")) {
+            if (!(value instanceof Document)) {return null;}
+            value = ((Document) value).get(key);
+        }
+        return value;
+    }
+
+    public boolean isStarted() {
+        return lastId != null;
+    }
+
+    public void reset() {
+        lastSort = null;
+        lastId = null;
+    }
+
+    public void load(DatabaseClient databaseClient) {
+        Document saved = databaseClient.getStatus(statusKey, (Document) null);
+        if (saved == null || !Objects.equals(saved.getString("field"), sortField)) {// nothing saved or sorted differently
+            reset();
+            return;
+        }
+        lastSort = saved.get("sort");
+        lastId = saved.get("id");
+    }
+
+    public void save(DatabaseClient databaseClient) {
+        databaseClient.updateStatus(statusKey, new Document("field", sortField).append("sort", lastSort).append("id", lastId));
+    }
+
+    @Override
+    public String toString() {
+        return sortField == null ? "(_id > " + lastId + ")" : "((" + sortField + ", _id) > (" + lastSort + ", " + lastId + "))";
+    }
+
+}
@@ -0,0 +1,58 @@
+package org.spiget.resourcemanagerfetcher;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets, cheap enough to record on every item.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Buckets up to 2^27 microseconds (~134s), everything above lands in the last one
+     */
+    static final int BUCKETS = 28;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);// micros <= 2^bucket
+        if (micros == 1L << (bucket - 1) && bucket > 0) {
+            bucket--;
+        }
+        counts[Math.min(bucket, BUCKETS)].increment();
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * @return upper bound of the bucket in seconds
+     */
+    static double upperBound(int bucket) {
+        return (1L << bucket) / 1_000_000.0;
+    }
+
+    /**
+     * Append this histogram in the Prometheus text format
+     */
+    void write(StringBuilder out, String name, String labels) {
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += counts[i].sum();
+            out.append(name).append("_bucket{").append(labels).append(",le=\"").append(upperBound(i)).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += counts[BUCKETS].sum();
+        out.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum{").append(labels).append("} ").append(sumNanos.sum() / 1e9).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(count.sum()).append('\n');
+    }
+
+}
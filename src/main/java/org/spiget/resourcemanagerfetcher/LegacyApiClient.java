@@ -0,0 +1,55 @@
+package org.spiget.resourcemanagerfetcher;
+
+import org.spiget.client.json.JsonClient;
+import org.spiget.client.json.JsonResponse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link SpigotApiClient} running the blocking {@link JsonClient} on the given executor.
+ */
+public class LegacyApiClient implements SpigotApiClient {
+
+    private final String baseUrl;
+    private final Executor executor;
+    private final PipelineMetrics pipeline;
+
+    public LegacyApiClient(String baseUrl, Executor executor, PipelineMetrics pipeline) {
+        this.baseUrl = baseUrl;
+        this.executor = executor;
+        this.pipeline = pipeline;
+    }
+
+    @Override
+    public CompletableFuture<Response> getResource(int id) {
+        return get(baseUrl + "?action=getResource&id=" + id);
+    }
+
+    @Override
+    public CompletableFuture<Response> getAuthor(int id) {
+        return get(baseUrl + "?action=getAuthor&id=" + id);
+    }
+
+    @Override
+    public CompletableFuture<Response> listResources(Integer category, int page) {
+        return get(baseUrl + "?" + SpigotApiClient.listQuery(category, page));
+    }
+
+    CompletableFuture<Response> get(String url) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                JsonResponse response = JsonClient.get(url);
+                pipeline.record(PipelineMetrics.Stage.HTTP, start);// includes decoding
+                if (response == null) {return null;}
+                return new Response(response.code, response.code == 200 ? response.json : null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+}
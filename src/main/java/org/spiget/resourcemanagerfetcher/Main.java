@@ -1,11 +1,21 @@
 package org.spiget.resourcemanagerfetcher;
 
+import java.util.Arrays;
+
 public class Main {
 
 	public static void main(String...args) throws Exception {
 		SpigetRestFetcher fetcher = new SpigetRestFetcher();
-		fetcher.init();
-		fetcher.fetch();
+		if (fetcher.init() == null) {
+			System.exit(-1);
+			return;
+		}
+		if (Arrays.asList(args).contains("--daemon") || SpigetRestFetcher.config.getBoolean("fetch.daemon", false)) {
+			fetcher.runDaemon();
+		} else {
+			fetcher.fetch();
+			fetcher.shutdown();
+		}
 	}
 
 }
@@ -0,0 +1,216 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Updates;
+import io.sentry.Sentry;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits resources and authors into <code>_id % count</code> partitions that fetcher instances claim through lease
+ * documents in the status collection.
+ * <p>
+ * A lease is kept alive by heartbeats while its partition is processed. If a node dies, its lease expires and another
+ * node takes the partition over, continuing from the partition's saved cursor. Items of the last page the previous owner
+ * already checked are skipped by the due filter once their writes are flushed, so only the ones that were still in
+ * flight are checked again. A finished partition stays idle until
+ * <code>idleUntil</code>, so the other nodes don't rescan it right away.
+ * <p>
+ * With a single partition no leases are used and the partition is handed out once per run, resuming if the previous
+ * run did not finish.
+ */
+@Log4j2
+public class PartitionLeases {
+
+    private static final String PREFIX = "fetch.rest.lease.";
+
+    private final MongoCollection<Document> status;
+    private final String node;
+    private final int count;
+    private final long ttl;
+    private final long idle;
+
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "lease-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private boolean localClaimed;
+
+    /**
+     * @param status collection the lease documents are kept in, the status collection
+     */
+    public PartitionLeases(MongoCollection<Document> status, String node, int count, long ttl, long idle) {
+        this.status = status;
+        this.node = node;
+        this.count = count;
+        this.ttl = ttl;
+        this.idle = idle;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public void reset() {
+        localClaimed = false;
+    }
+
+    /**
+     * @param resumeLocal whether the single local partition should continue where the previous run stopped
+     * @return the next partition to process, or <code>null</code> if there is none left for this node
+     */
+    public Partition claim(boolean resumeLocal) {
+        if (count <= 1) {
+            if (localClaimed) {return null;}
+            localClaimed = true;
+            return new Partition(0, resumeLocal);
+        }
+
+        List<Integer> order = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order);// spread nodes over the partitions
+
+        for (int index : order) {
+            long now = System.currentTimeMillis();
+            Bson claimable = Filters.and(
+                    Filters.eq("_id", PREFIX + index),
+                    Filters.or(
+                            Filters.lt("value.expires", now),
+                            Filters.eq("value.owner", node)
+                    ),
+                    Filters.or(
+                            Filters.exists("value.idleUntil", false),
+                            Filters.lt("value.idleUntil", now)
+                    )
+            );
+            try {
+                Document previous = status.findOneAndUpdate(claimable,
+                        Updates.combine(
+                                Updates.set("key", PREFIX + index),
+                                Updates.set("value.owner", node),
+                                Updates.set("value.expires", now + ttl),
+                                Updates.set("value.finished", false),
+                                Updates.unset("value.idleUntil")
+                        ),
+                        new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.BEFORE));
+                // resume unless the previous owner released it after finishing
+                boolean resume = previous != null && !Boolean.TRUE.equals(((Document) previous.get("value")).get("finished"));
+                Partition partition = new Partition(index, resume);
+                partition.heartbeat = heartbeats.scheduleWithFixedDelay(() -> heartbeat(partition), ttl / 3, ttl / 3, TimeUnit.MILLISECONDS);
+                log.info("Claimed partition {}{}", partition, resume ? " (resuming)" : "");
+                return partition;
+            } catch (MongoException e) {
+                if (ErrorCategory.fromErrorCode(e.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    Sentry.captureException(e);
+                    log.warn("Failed to claim partition {}", index, e);
+                }
+                // otherwise held by another node
+            }
+        }
+        return null;
+    }
+
+    void heartbeat(Partition partition) {
+        try {
+            long modified = status.updateOne(
+                    Filters.and(Filters.eq("_id", PREFIX + partition.index), Filters.eq("value.owner", node)),
+                    Updates.set("value.expires", System.currentTimeMillis() + ttl)
+            ).getModifiedCount();
+            if (modified == 0) {
+                log.warn("Lost lease on partition {}", partition);
+                partition.lost = true;
+            }
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            log.warn("Failed to renew lease on partition {}", partition, e);
+            partition.lost = true;
+        }
+        if (partition.lost) {
+            partition.heartbeat.cancel(false);
+        }
+    }
+
+    /**
+     * @param finished whether the partition was processed to the end, so it can idle until the next cycle
+     */
+    public void release(Partition partition, boolean finished) {
+        if (partition.heartbeat != null) {
+            partition.heartbeat.cancel(false);
+        }
+        if (count <= 1 || partition.lost) {return;}
+        try {
+            status.updateOne(
+                    Filters.and(Filters.eq("_id", PREFIX + partition.index), Filters.eq("value.owner", node)),
+                    Updates.combine(
+                            Updates.set("value.owner", null),
+                            Updates.set("value.expires", 0L),
+                            Updates.set("value.finished", finished),
+                            finished ? Updates.set("value.idleUntil", System.currentTimeMillis() + idle) : Updates.unset("value.idleUntil")
+                    ));
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            log.warn("Failed to release partition {}", partition, e);
+        }
+    }
+
+    public class Partition {
+
+        final int index;
+        final boolean resume;
+
+        volatile boolean lost;
+        ScheduledFuture<?> heartbeat;
+
+        Partition(int index, boolean resume) {
+            this.index = index;
+            this.resume = resume;
+        }
+
+        /**
+         * @return whether this node still owns the partition and may dispatch its items
+         */
+        public boolean isHeld() {
+            return !lost;
+        }
+
+        public boolean isResume() {
+            return resume;
+        }
+
+        public Bson filter() {
+            return count <= 1 ? new Document() : Filters.mod("_id", count, index);
+        }
+
+        /**
+         * @return suffix for per-partition status keys, empty when not partitioned
+         */
+        public String suffix() {
+            return count <= 1 ? "" : ".p" + index;
+        }
+
+        @Override
+        public String toString() {
+            return index + "/" + count;
+        }
+
+    }
+
+}
@@ -0,0 +1,129 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import io.sentry.Sentry;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.spiget.data.UpdateRequest;
+import org.spiget.database.DatabaseParser;
+import org.spiget.database.SpigetGson;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Update requests that are still waiting for the main fetcher, one per entity.
+ * <p>
+ * A request is only written if it asks for more than the pending one, and then as an upsert keyed on
+ * <code>(type, requestedId)</code> that merges the flags with <code>$max</code>. An entity that stays changed until
+ * the main fetcher gets to it therefore doesn't pile up requests over the cycles.
+ * <p>
+ * Requests written here carry <code>processed: false</code>. Only those that aren't marked <code>processed: true</code>
+ * count as pending, and a unique index on <code>(type, requestedId)</code> over the unprocessed ones keeps concurrent
+ * upserts from several nodes from inserting the same request twice.
+ */
+@Log4j2
+public class PendingUpdateRequests {
+
+    static final int DELETE = 1;
+    static final int VERSIONS = 2;
+    static final int UPDATES = 4;
+    static final int REVIEWS = 8;
+
+    private static final String[] FLAG_FIELDS = {"delete", "versions", "updates", "reviews"};
+    static final String PROCESSED = "processed";
+
+    private final MongoCollection<Document> collection;
+    private final WriteBatcher writes;
+
+    /**
+     * Flags of the pending requests by type and id
+     */
+    private final Map<String, IntLongMap> pending = new HashMap<>();
+
+    public PendingUpdateRequests(MongoCollection<Document> collection, WriteBatcher writes) {
+        this.collection = collection;
+        this.writes = writes;
+    }
+
+    /**
+     * Creates the unique index the upserts rely on
+     */
+    public void ensureIndex() {
+        try {
+            collection.createIndex(Indexes.ascending("type", "requestedId"), new IndexOptions()
+                    .unique(true)
+                    .partialFilterExpression(Filters.eq(PROCESSED, false)));
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            log.warn("Failed to create update request index", e);
+        }
+    }
+
+    /**
+     * Replaces the pending set with the unprocessed requests currently in the database, which drops those the main
+     * fetcher processed, whether it deleted or marked them
+     */
+    public void seed() {
+        Map<String, IntLongMap> seeded = new HashMap<>();
+        int count = 0;
+        for (Document document : collection.find(Filters.ne(PROCESSED, true)).projection(Projections.include("type", "requestedId", "delete", "versions", "updates", "reviews"))) {
+            String type = document.getString("type");
+            if (type == null || !(document.get("requestedId") instanceof Number)) {continue;}
+            IntLongMap ids = seeded.computeIfAbsent(type, t -> new IntLongMap(1024));
+            int id = ((Number) document.get("requestedId")).intValue();
+            ids.put(id, ids.get(id, 0) | flags(document));
+            count++;
+        }
+        synchronized (this) {
+            pending.clear();
+            pending.putAll(seeded);
+        }
+        log.info("{} update requests pending", count);
+    }
+
+    static int flags(Document document) {
+        int flags = 0;
+        for (int i = 0; i < FLAG_FIELDS.length; i++) {
+            if (Boolean.TRUE.equals(document.get(FLAG_FIELDS[i]))) {
+                flags |= 1 << i;
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * @param requested when the request was made, kept from the first request for the entity
+     * @return whether a request was written, <code>false</code> if a pending one already covers it
+     */
+    public boolean request(UpdateRequest request, long requested) {
+        String type = request.getType();
+        int id = request.getRequestedId();
+        Document document = DatabaseParser.toDocument(SpigetGson.UPDATE_REQUEST.toJsonTree(request));
+        int flags = flags(document);
+
+        synchronized (this) {
+            IntLongMap ids = pending.computeIfAbsent(type, t -> new IntLongMap(1024));
+            long existing = ids.get(id, -1);
+            if (existing != -1 && (existing | flags) == existing) {return false;}
+            ids.put(id, (existing == -1 ? 0 : existing) | flags);
+        }
+
+        Document max = new Document();
+        for (String field : FLAG_FIELDS) {
+            max.append(field, Boolean.TRUE.equals(document.remove(field)));
+        }
+        document.remove("type");
+        document.remove("requestedId");
+        document.put("requested", requested);
+        // matches the unprocessed request only, a processed one is left alone and a new one inserted next to it
+        writes.upsert(collection, new Document("type", type).append("requestedId", id).append(PROCESSED, false),
+                new Document("$setOnInsert", document).append("$max", max));
+        return true;
+    }
+
+}
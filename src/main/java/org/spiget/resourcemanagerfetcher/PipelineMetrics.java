@@ -0,0 +1,103 @@
+package org.spiget.resourcemanagerfetcher;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-stage latencies and counters of the fetch pipeline, served in the Prometheus text format.
+ */
+public class PipelineMetrics {
+
+    public enum Stage {
+        /**
+         * Reading a page of stale items (and their versions) from Mongo
+         */
+        CURSOR,
+        /**
+         * SpigotMC request until the response headers arrived
+         */
+        HTTP,
+        /**
+         * Parsing a response body
+         */
+        DECODE,
+        /**
+         * Comparing a response with the database
+         */
+        COMPARE,
+        /**
+         * Flushing batched writes
+         */
+        DB_WRITE,
+        /**
+         * Writing progress and cursors to the status collection
+         */
+        STATUS_WRITE
+    }
+
+    private final Map<Stage, LatencyHistogram> stages = new ConcurrentHashMap<>();
+    private final Map<Integer, LongAdder> responses = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> changes = new ConcurrentHashMap<>();
+    private final LongAdder items = new LongAdder();
+
+    public PipelineMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+    }
+
+    public void record(Stage stage, long startNanos) {
+        stages.get(stage).record(System.nanoTime() - startNanos);
+    }
+
+    public void countResponse(int code) {
+        responses.computeIfAbsent(code, c -> new LongAdder()).increment();
+    }
+
+    /**
+     * @param field changed field, e.g. <code>name</code> or <code>downloads</code>
+     */
+    public void countChange(String entity, String field) {
+        changes.computeIfAbsent(entity + ":" + field, c -> new LongAdder()).increment();
+    }
+
+    public void countItem() {
+        items.increment();
+    }
+
+    public String toPrometheus(FetchProgress progress) {
+        StringBuilder out = new StringBuilder(8192);
+
+        out.append("# HELP spiget_rest_stage_seconds Duration of each fetch pipeline stage\n");
+        out.append("# TYPE spiget_rest_stage_seconds histogram\n");
+        for (Stage stage : Stage.values()) {
+            stages.get(stage).write(out, "spiget_rest_stage_seconds", "stage=\"" + stage.name().toLowerCase() + "\"");
+        }
+
+        out.append("# HELP spiget_rest_responses_total SpigotMC responses by status code\n");
+        out.append("# TYPE spiget_rest_responses_total counter\n");
+        for (Map.Entry<Integer, LongAdder> entry : new TreeMap<>(responses).entrySet()) {
+            out.append("spiget_rest_responses_total{code=\"").append(entry.getKey()).append("\"} ").append(entry.getValue().sum()).append('\n');
+        }
+
+        out.append("# HELP spiget_rest_changes_total Changed fields written to the database\n");
+        out.append("# TYPE spiget_rest_changes_total counter\n");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(changes).entrySet()) {
+            String[] split = entry.getKey().split(":", 2);
+            out.append("spiget_rest_changes_total{entity=\"").append(split[0]).append("\",field=\"").append(split[1]).append("\"} ").append(entry.getValue().sum()).append('\n');
+        }
+
+        out.append("# HELP spiget_rest_items_total Items checked\n");
+        out.append("# TYPE spiget_rest_items_total counter\n");
+        out.append("spiget_rest_items_total ").append(items.sum()).append('\n');
+
+        out.append("# HELP spiget_rest_items_per_second Items checked per second in the current run\n");
+        out.append("# TYPE spiget_rest_items_per_second gauge\n");
+        out.append("spiget_rest_items_per_second ").append(progress.getItemsPerSecond()).append('\n');
+
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,67 @@
+package org.spiget.resourcemanagerfetcher;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket shared by all workers to keep the total request rate to SpigotMC at the configured requests/second.
+ * <p>
+ * Callers reserve a token up front (the bucket may go into debt) and then wait outside the lock until it becomes
+ * available, so waiting threads don't block each other from reserving.
+ */
+public class RateLimiter {
+
+    private final double burst;
+
+    private double tokens;
+    private double nanosPerToken;
+    private long lastRefill;
+
+    /**
+     * @param permitsPerSecond requests per second
+     * @param burst            maximum tokens that can be saved up while idle
+     */
+    public RateLimiter(double permitsPerSecond, double burst) {
+        this.burst = Math.max(1, burst);
+        this.tokens = 1;
+        this.lastRefill = System.nanoTime();
+        this.nanosPerToken = nanosPerToken(permitsPerSecond);
+    }
+
+    public synchronized void setRate(double permitsPerSecond) {
+        double nanos = nanosPerToken(permitsPerSecond);
+        refill(System.nanoTime());// tokens saved up so far accrue at the old rate
+        this.nanosPerToken = nanos;
+    }
+
+    static double nanosPerToken(double permitsPerSecond) {
+        if (!(permitsPerSecond > 0)) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        return TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+    }
+
+    public synchronized double getRate() {
+        return TimeUnit.SECONDS.toNanos(1) / nanosPerToken;
+    }
+
+    /**
+     * Blocks until a request may be sent.
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            refill(System.nanoTime());
+            tokens -= 1;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens * nanosPerToken);
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - lastRefill) / nanosPerToken);
+        lastRefill = now;
+    }
+
+}
@@ -0,0 +1,86 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.JsonObject;
+import io.sentry.Sentry;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.Level;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Passes requests through to another client and records the responses as a corpus for {@link ReplayApiClient}.
+ * <p>
+ * The corpus has one JSON object per line, <code>{"action", "key", "code", "json"}</code>, gzipped if the file name
+ * ends with <code>.gz</code>. Throttled responses aren't recorded, so a replay doesn't keep retrying them.
+ */
+@Log4j2
+public class RecordingApiClient implements SpigotApiClient {
+
+    private final SpigotApiClient delegate;
+    private final Writer writer;
+
+    public RecordingApiClient(SpigotApiClient delegate, File file) throws IOException {
+        this.delegate = delegate;
+        OutputStream out = new FileOutputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            out = new GZIPOutputStream(out, 1 << 16);
+        }
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        log.info("Recording responses to {}", file);
+    }
+
+    @Override
+    public CompletableFuture<Response> getResource(int id) {
+        return record("getResource", String.valueOf(id), delegate.getResource(id));
+    }
+
+    @Override
+    public CompletableFuture<Response> getAuthor(int id) {
+        return record("getAuthor", String.valueOf(id), delegate.getAuthor(id));
+    }
+
+    @Override
+    public CompletableFuture<Response> listResources(Integer category, int page) {
+        return record("listResources", ReplayApiClient.listKey(category, page), delegate.listResources(category, page));
+    }
+
+    CompletableFuture<Response> record(String action, String key, CompletableFuture<Response> future) {
+        return future.thenApply(response -> {
+            if (response != null && response.code != 503 && response.code != 429) {
+                write(action, key, response);
+            }
+            return response;
+        });
+    }
+
+    synchronized void write(String action, String key, Response response) {
+        JsonObject line = new JsonObject();
+        line.addProperty("action", action);
+        line.addProperty("key", key);
+        line.addProperty("code", response.code);
+        if (response.hasBody()) {
+            line.add("json", response.getJson());
+        }
+        try {
+            writer.write(line.toString());
+            writer.write('\n');
+        } catch (IOException e) {
+            Sentry.captureException(e);
+            log.log(Level.WARN, "Failed to record response", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            Sentry.captureException(e);
+            log.log(Level.WARN, "Failed to close recording", e);
+        }
+    }
+
+}
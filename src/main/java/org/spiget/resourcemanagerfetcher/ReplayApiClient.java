@@ -0,0 +1,158 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Serves responses from a corpus recorded by {@link RecordingApiClient} instead of SpigotMC, after a simulated latency.
+ * <p>
+ * Entities missing from the corpus are answered with 404. With a scale above 1, ids beyond the recorded ones are
+ * answered with the recorded entity of <code>id % stride</code>, so a catalog seeded by {@link ReplaySeeder} at
+ * several times the real size can be fetched from a small corpus.
+ * <p>
+ * Given a seeded {@link Random}, the simulated latencies are the same on every run.
+ */
+@Log4j2
+public class ReplayApiClient implements SpigotApiClient {
+
+    private final Map<String, Map<String, Response>> corpus = new HashMap<>();
+    private final Map<String, Integer> strides = new HashMap<>();
+    private final int scale;
+    private final long latency;
+    private final long jitter;
+    private final PipelineMetrics pipeline;
+    private final Random random;
+
+    private final ScheduledExecutorService timer = Executors.newScheduledThreadPool(2, r -> {
+        Thread thread = new Thread(r, "replay-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param scale   how many copies of the recorded catalog to answer for
+     * @param latency simulated response time in milliseconds
+     * @param jitter  random extra response time in milliseconds, up to
+     * @param random  source of the jitter, <code>null</code> for {@link ThreadLocalRandom}
+     */
+    public ReplayApiClient(File file, int scale, long latency, long jitter, PipelineMetrics pipeline, Random random) throws IOException {
+        this.scale = Math.max(1, scale);
+        this.latency = latency;
+        this.jitter = jitter;
+        this.pipeline = pipeline;
+        this.random = random;
+        load(file);
+    }
+
+    void load(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            JsonParser parser = new JsonParser();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {continue;}
+                JsonObject entry = parser.parse(line).getAsJsonObject();
+                String action = entry.get("action").getAsString();
+                String key = entry.get("key").getAsString();
+                corpus.computeIfAbsent(action, a -> new HashMap<>()).put(key, new Response(entry.get("code").getAsInt(), entry.get("json")));
+                count++;
+            }
+        }
+        for (String action : new String[]{"getResource", "getAuthor"}) {
+            strides.put(action, maxId(action) + 1);
+        }
+        log.info("Loaded {} recorded responses from {}, scaled {}x", count, file, scale);
+    }
+
+    /**
+     * @return the highest recorded id for the action
+     */
+    public int maxId(String action) {
+        int max = 0;
+        for (String key : corpus.getOrDefault(action, new HashMap<>()).keySet()) {
+            max = Math.max(max, Integer.parseInt(key));
+        }
+        return max;
+    }
+
+    /**
+     * @return the recorded payloads of the action, by key
+     */
+    public Map<String, Response> getRecorded(String action) {
+        return corpus.getOrDefault(action, new HashMap<>());
+    }
+
+    static String listKey(Integer category, int page) {
+        return (category != null ? category : "") + ":" + page;
+    }
+
+    @Override
+    public CompletableFuture<Response> getResource(int id) {
+        return respond(lookup("getResource", id));
+    }
+
+    @Override
+    public CompletableFuture<Response> getAuthor(int id) {
+        return respond(lookup("getAuthor", id));
+    }
+
+    @Override
+    public CompletableFuture<Response> listResources(Integer category, int page) {
+        Response response = getRecorded("listResources").get(listKey(category, page));
+        return respond(response != null ? response : new Response(200, new JsonArray()));// past the last page
+    }
+
+    Response lookup(String action, int id) {
+        Map<String, Response> recorded = getRecorded(action);
+        Response response = recorded.get(String.valueOf(id));
+        if (response != null) {return response;}
+
+        int stride = strides.getOrDefault(action, 1);
+        if (scale > 1 && id >= stride && id < stride * scale) {
+            Response base = recorded.get(String.valueOf(id % stride));
+            if (base != null && base.json != null && base.json.isJsonObject()) {
+                JsonObject copy = base.json.deepCopy().getAsJsonObject();
+                copy.addProperty("id", String.valueOf(id));
+                return new Response(base.code, copy);
+            }
+            if (base != null) {return base;}
+        }
+        return new Response(404);
+    }
+
+    CompletableFuture<Response> respond(Response response) {
+        long start = System.nanoTime();
+        long delay = latency + (jitter > 0 ? (long) ((random != null ? random : ThreadLocalRandom.current()).nextDouble() * jitter) : 0);
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        timer.schedule(() -> {
+            pipeline.record(PipelineMetrics.Stage.HTTP, start);
+            // hand out the raw bytes, like the http client does
+            future.complete(response.json != null ? new Response(response.code, response.json.toString().getBytes(StandardCharsets.UTF_8)) : response);
+        }, delay, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdown();
+    }
+
+}
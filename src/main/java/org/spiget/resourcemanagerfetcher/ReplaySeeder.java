@@ -0,0 +1,157 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.spiget.database.DatabaseClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fills an empty local database with the resources, their current versions and the authors of a replay corpus, copied
+ * <code>scale</code> times with ids offset by the corpus stride, for load tests against {@link ReplayApiClient}.
+ * <p>
+ * Every resource gets a version document with the resource's id, so the digest and version comparisons run. Every
+ * {@value #OUTDATED}th resource is one version behind, so its check requests an update. Refuses to touch collections
+ * that already contain documents.
+ */
+@Log4j2
+public class ReplaySeeder {
+
+    private static final int BATCH = 1000;
+    static final int OUTDATED = 10;
+
+    private final DatabaseClient databaseClient;
+    private final ReplayApiClient corpus;
+    private final int scale;
+
+    public ReplaySeeder(DatabaseClient databaseClient, ReplayApiClient corpus, int scale) {
+        this.databaseClient = databaseClient;
+        this.corpus = corpus;
+        this.scale = Math.max(1, scale);
+    }
+
+    public void seed() {
+        seed(databaseClient.getResourcesCollection(), "getResource", true);
+        seed(databaseClient.getAuthorsCollection(), "getAuthor", false);
+    }
+
+    void seed(MongoCollection<Document> collection, String action, boolean resource) {
+        MongoCollection<Document> versionCollection = databaseClient.getResourceVersionsCollection();
+        if (collection.countDocuments() > 0 || resource && versionCollection.countDocuments() > 0) {
+            log.warn("Not seeding {}, it isn't empty", resource ? collection.getNamespace() + " or its versions" : collection.getNamespace());
+            return;
+        }
+        int stride = corpus.maxId(action) + 1;
+        List<Document> batch = new ArrayList<>(BATCH);
+        List<Document> versions = new ArrayList<>(BATCH);
+        int count = 0;
+        int versionCount = 0;
+        for (int copy = 0; copy < scale; copy++) {
+            for (Map.Entry<String, SpigotApiClient.Response> entry : corpus.getRecorded(action).entrySet()) {
+                if (entry.getValue().json == null || !entry.getValue().json.isJsonObject()) {continue;}
+                int id = Integer.parseInt(entry.getKey()) + copy * stride;
+                JsonObject json = entry.getValue().json.getAsJsonObject();
+                if (resource) {
+                    Document document = resourceDocument(id, json);
+                    Document version = versionDocument(id, json);
+                    if (version != null) {
+                        document.append("version", new Document("id", version.get("_id")));
+                        versions.add(version);
+                    }
+                    batch.add(document);
+                } else {
+                    batch.add(authorDocument(id, json));
+                }
+                if (batch.size() >= BATCH) {
+                    count += insert(collection, batch);
+                    versionCount += insert(versionCollection, versions);
+                }
+            }
+        }
+        count += insert(collection, batch);
+        versionCount += insert(versionCollection, versions);
+        log.info("Seeded {} documents into {}", count, collection.getNamespace());
+        if (versionCount > 0) {
+            log.info("Seeded {} versions into {}", versionCount, versionCollection.getNamespace());
+        }
+    }
+
+    static int insert(MongoCollection<Document> collection, List<Document> batch) {
+        if (batch.isEmpty()) {return 0;}
+        collection.insertMany(batch, new InsertManyOptions().ordered(false));
+        int count = batch.size();
+        batch.clear();
+        return count;
+    }
+
+    /**
+     * A stored resource as the main fetcher would write it, with downloads one behind so the first check sees a change
+     */
+    static Document resourceDocument(int id, JsonObject json) {
+        Document document = new Document("_id", id)
+                .append("name", string(json, "title"))
+                .append("tag", string(json, "tag"));
+        JsonObject premium = json.has("premium") && json.get("premium").isJsonObject() ? json.getAsJsonObject("premium") : null;
+        if (premium != null && premium.has("price") && premium.get("price").getAsDouble() > 0.1) {
+            document.append("premium", true)
+                    .append("price", premium.get("price").getAsDouble())
+                    .append("currency", premium.get("currency").getAsString().toUpperCase());
+        } else {
+            document.append("premium", false);
+        }
+        JsonObject stats = json.has("stats") && json.get("stats").isJsonObject() ? json.getAsJsonObject("stats") : null;
+        if (stats != null) {
+            document.append("downloads", Math.max(0, stats.get("downloads").getAsInt() - 1));
+            JsonElement reviews = stats.get("reviews");
+            int ratingCount = reviews.isJsonObject() ? reviews.getAsJsonObject().get("total").getAsInt() : reviews.getAsInt();
+            document.append("rating", new Document("count", ratingCount).append("average", stats.get("rating").getAsFloat()));
+        }
+        if (json.has("author") && json.get("author").isJsonObject()) {
+            document.append("author", new Document("id", json.getAsJsonObject("author").get("id").getAsInt()));
+        }
+        return document;
+    }
+
+    /**
+     * The resource's current version as the main fetcher would store it, with the resource's id
+     *
+     * @return <code>null</code> if the payload has no current version
+     */
+    static Document versionDocument(int id, JsonObject json) {
+        String name = string(json, "current_version");
+        if (name == null) {return null;}
+        return new Document("_id", id)
+                .append("resource", id)
+                .append("name", id % OUTDATED == 0 ? name + "-previous" : name);
+    }
+
+    static Document authorDocument(int id, JsonObject json) {
+        Document document = new Document("_id", id)
+                .append("name", string(json, "username"));
+        if (json.has("identities") && json.get("identities").isJsonObject()) {
+            Document identities = new Document();
+            for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject("identities").entrySet()) {
+                if (!entry.getValue().isJsonNull()) {
+                    identities.append(entry.getKey(), entry.getValue().getAsString());
+                }
+            }
+            document.append("identities", identities);
+        }
+        if (json.has("avatar") && json.get("avatar").isJsonObject()) {
+            JsonObject avatar = json.getAsJsonObject("avatar");
+            document.append("icon", new Document("info", string(avatar, "info")).append("hash", string(avatar, "hash")));
+        }
+        return document;
+    }
+
+    static String string(JsonObject json, String key) {
+        return json.has(key) && !json.get(key).isJsonNull() ? json.get(key).getAsString() : null;
+    }
+
+}
@@ -0,0 +1,163 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.stream.JsonReader;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import io.sentry.Sentry;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+@Log4j2
+public class ResourceChecker implements Checker<ResourceSnapshot, ResourcePayload> {
+
+    private final SpigetRestFetcher fetcher;
+
+    public ResourceChecker(SpigetRestFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    @Override
+    public String getType() {
+        return "resource";
+    }
+
+    @Override
+    public MongoCollection<Document> getCollection() {
+        return SpigetRestFetcher.databaseClient.getResourcesCollection();
+    }
+
+    @Override
+    public String getSortField() {
+        return "fetch.restDue";
+    }
+
+    @Override
+    public Bson getProjection() {
+        return ResourceSnapshot.PROJECTION;
+    }
+
+    @Override
+    public ResourceSnapshot decode(Document document) {
+        return ResourceSnapshot.fromDocument(document);
+    }
+
+    /**
+     * Looks up the current version names of all resources in the page with a single query
+     */
+    @Override
+    public void preparePage(List<ResourceSnapshot> page) {
+        List<Integer> ids = new ArrayList<>(page.size());
+        for (ResourceSnapshot resource : page) {
+            if (resource.getVersionId() != null) {
+                ids.add(resource.getVersionId());
+            }
+        }
+        if (ids.isEmpty()) {return;}
+        Map<Integer, String> versions = new HashMap<>(ids.size() * 2);
+        for (Document document : SpigetRestFetcher.databaseClient.getResourceVersionsCollection()
+                .find(Filters.in("_id", ids))
+                .projection(Projections.include("name"))) {
+            versions.put(ResourceSnapshot.intValue(document.get("_id"), 0), document.getString("name"));
+        }
+        for (ResourceSnapshot resource : page) {
+            if (resource.getVersionId() != null) {
+                resource.setVersionName(versions.get(resource.getVersionId()));
+            }
+        }
+    }
+
+    @Override
+    public int getId(ResourceSnapshot resource) {
+        return resource.getId();
+    }
+
+    @Override
+    public long getLastFetched(ResourceSnapshot resource) {
+        return resource.getLastFetched();
+    }
+
+    @Override
+    public long getInterval(ResourceSnapshot resource) {
+        return resource.getRestInterval() > 0 ? resource.getRestInterval() : fetcher.scheduler.getDefaultInterval();
+    }
+
+    @Override
+    public CompletableFuture<SpigotApiClient.Response> request(SpigotApiClient client, ResourceSnapshot resource) {
+        return client.getResource(resource.getId());
+    }
+
+    @Override
+    public ResourcePayload read(JsonReader in) throws IOException {
+        ResourcePayload payload = ResourcePayload.local();
+        return payload.read(in) ? payload : null;
+    }
+
+    @Override
+    public long digest(ResourceSnapshot resource, ResourcePayload payload) {
+        return ChangeDigest.ofResource(resource, resource.getVersionName());
+    }
+
+    @Override
+    public long digest(ResourcePayload payload) {
+        return ChangeDigest.ofResource(payload);
+    }
+
+    @Override
+    public long getLastDigest(int id) {
+        return SpigetRestFetcher.digests.getResource(id);
+    }
+
+    @Override
+    public void putLastDigest(int id, long digest) {
+        SpigetRestFetcher.digests.putResource(id, digest);
+    }
+
+    @Override
+    public Changes compare(ResourceSnapshot resource, ResourcePayload payload) {
+        return ResourceComparator.compare(resource, payload, resource.getVersionName());
+    }
+
+    @Override
+    public void notFound(ResourceSnapshot resource) {
+        fetcher.requestUpdate(resource.getId(), "resource", true);
+    }
+
+    @Override
+    public void schedule(ResourceSnapshot resource, @Nullable Changes changes) {
+        fetcher.scheduleNextCheck(resource, fetcher.scheduler.classify(changes));
+    }
+
+    @Override
+    public void checked(ResourceSnapshot resource, @Nullable Changes changes) {
+        if (changes == null) {return;}
+        for (Changes.Change change : changes.getChanges()) {
+            if ("premium".equals(change.field)) {
+                log.warn("SpigotMC says #{} is premium but DB says it's not!", resource.getId());
+            }
+        }
+
+        String requestUpdate = changes.getUpdateReason();
+        if (requestUpdate != null) {
+            log.debug("Requesting update for #{} ({})", resource.getId(), requestUpdate);
+            fetcher.requestUpdate(resource.getId(), "resource", false);
+            try {
+                SpigetRestFetcher.UPDATE_REQUEST_METRIC
+                        .tag("reason", requestUpdate)
+                        .inc();
+            } catch (Exception e) {
+                Sentry.captureException(e);
+            }
+        }
+    }
+
+}
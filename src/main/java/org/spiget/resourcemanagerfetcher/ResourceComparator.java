@@ -0,0 +1,74 @@
+package org.spiget.resourcemanagerfetcher;
+
+import org.bson.Document;
+
+/**
+ * Compares a SpigotMC <code>getResource</code> payload with the resource in the database.
+ */
+public class ResourceComparator {
+
+    /**
+     * @param versionName name of the resource's current version in the database, if known
+     */
+    public static Changes compare(ResourceSnapshot resource, ResourcePayload payload, String versionName) {
+        Changes changes = new Changes();
+
+        //TITLE
+        String title = payload.getTitle();
+        if (resource.getName() != null && title != null && !resource.getName().equals(title)) {// name changed
+            changes.change("name", resource.getName(), title, new Document("name", title));
+        }
+
+        //TAG
+        String tag = payload.getTag();
+        if (resource.getTag() != null && tag != null && !resource.getTag().equals(tag)) {// tag changed
+            changes.change("tag", resource.getTag(), tag, new Document("tag", tag));
+        }
+
+        //PREMIUM STUFF
+        if (payload.isPremium() && payload.getCurrency() != null) {
+            double price = payload.getPrice();
+            String currency = payload.getCurrency();
+            if (!resource.isPremium()) {
+                changes.change("premium", false, true);
+            }
+            if (!resource.isPremium() || resource.getPrice() != price || !currency.equals(resource.getCurrency())) {
+                changes.change("price", ChangeDigest.price(resource.getPrice(), resource.getCurrency()), ChangeDigest.price(price, currency), new Document("premium", true)
+                        .append("price", price)
+                        .append("currency", currency));
+            }
+        }
+
+        //DOWNLOADS
+        int downloads = payload.getDownloads();
+        if (downloads >= 0 && resource.getDownloads() != downloads) {
+            changes.change("downloads", resource.getDownloads(), downloads, new Document("downloads", downloads));
+        }
+
+        //RATING
+        if (resource.isRated()) {
+            int ratingCount = payload.getRatingCount();
+            float ratingAvg = payload.getRating();
+            if (ratingCount > resource.getRatingCount()) {
+                changes.requestUpdate("moreRatings");
+                changes.change("rating.count", resource.getRatingCount(), ratingCount, new Document("rating.count", ratingCount));
+            }
+            if (!Float.isNaN(ratingAvg) && ratingAvg != resource.getRatingAverage()) {
+                changes.change("rating.average", resource.getRatingAverage(), ratingAvg, new Document("rating.average", ratingAvg));
+            }
+        }
+
+        //UPDATES
+        // this might not ever change for some resources, since the main fetcher only updates the first few pages of resource updates
+
+        //VERSION
+        String version = payload.getCurrentVersion();
+        if (version != null && versionName != null && !version.equals(versionName)) {
+            changes.requestUpdate("versionChange");
+            changes.change("version", versionName, version);
+        }
+
+        return changes;
+    }
+
+}
@@ -0,0 +1,248 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The few fields of a SpigotMC resource payload the fetcher compares, streamed from a {@link JsonReader} without
+ * building a tree. Everything else in the payload is skipped.
+ * <p>
+ * SpigotMC sends numbers as strings and <code>stats.reviews</code> either as a <code>{unique, total}</code> object or
+ * as a plain count; all of these are accepted. Missing or unreadable numbers are left at <code>-1</code>
+ * (<code>NaN</code> for the rating) instead of failing the whole payload.
+ */
+@Getter
+public class ResourcePayload {
+
+    private static final ThreadLocal<ResourcePayload> LOCAL = ThreadLocal.withInitial(ResourcePayload::new);
+
+    private int id;
+    private String title;
+    private String tag;
+    /**
+     * Whether the price is above the 0.1 SpigotMC sends for free resources
+     */
+    private boolean premium;
+    private double price;
+    private String currency;
+    private int downloads;
+    private int ratingCount;
+    private float rating;
+    private String currentVersion;
+    private int authorId;
+
+    /**
+     * @return the holder of the calling thread, overwritten by its next {@link #read(JsonReader)}
+     */
+    public static ResourcePayload local() {
+        return LOCAL.get();
+    }
+
+    void reset() {
+        id = -1;
+        title = null;
+        tag = null;
+        premium = false;
+        price = 0;
+        currency = null;
+        downloads = -1;
+        ratingCount = -1;
+        rating = Float.NaN;
+        currentVersion = null;
+        authorId = -1;
+    }
+
+    /**
+     * @return <code>false</code> if the value isn't an object, which is skipped
+     */
+    public boolean read(JsonReader in) throws IOException {
+        reset();
+        if (!beginObject(in)) {return false;}
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    id = intValue(in);
+                    break;
+                case "title":
+                    title = string(in);
+                    break;
+                case "tag":
+                    tag = string(in);
+                    break;
+                case "current_version":
+                    currentVersion = string(in);
+                    break;
+                case "author":
+                    readAuthor(in);
+                    break;
+                case "premium":
+                    readPremium(in);
+                    break;
+                case "stats":
+                    readStats(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        return true;
+    }
+
+    /**
+     * Reads a <code>listResources</code> page into new holders, skipping entries that aren't objects
+     *
+     * @return <code>null</code> if the value isn't an array
+     */
+    public static List<ResourcePayload> readList(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_ARRAY) {
+            in.skipValue();
+            return null;
+        }
+        List<ResourcePayload> list = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            ResourcePayload payload = new ResourcePayload();
+            if (payload.read(in)) {
+                list.add(payload);
+            }
+        }
+        in.endArray();
+        return list;
+    }
+
+    void readAuthor(JsonReader in) throws IOException {
+        if (!beginObject(in)) {return;}
+        while (in.hasNext()) {
+            if ("id".equals(in.nextName())) {
+                authorId = intValue(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    void readPremium(JsonReader in) throws IOException {
+        if (!beginObject(in)) {return;}
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "price":
+                    price = doubleValue(in);
+                    break;
+                case "currency":
+                    currency = string(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        premium = price > 0.1;
+        if (currency != null) {
+            currency = currency.toUpperCase();
+        }
+    }
+
+    void readStats(JsonReader in) throws IOException {
+        if (!beginObject(in)) {return;}
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "downloads":
+                    downloads = intValue(in);
+                    break;
+                case "rating":
+                    rating = floatValue(in);
+                    break;
+                case "reviews":
+                    if (in.peek() == JsonToken.BEGIN_OBJECT) {
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            if ("total".equals(in.nextName())) {
+                                ratingCount = intValue(in);
+                            } else {
+                                in.skipValue();
+                            }
+                        }
+                        in.endObject();
+                    } else {
+                        ratingCount = intValue(in);
+                    }
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+    }
+
+    /**
+     * Enters the object, or skips the value if it isn't one
+     */
+    static boolean beginObject(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return false;
+        }
+        in.beginObject();
+        return true;
+    }
+
+    /**
+     * @return the value as a string, or <code>null</code> if it's null, an object or an array
+     */
+    static String string(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case STRING:
+            case NUMBER:
+                return in.nextString();
+            case BOOLEAN:
+                return String.valueOf(in.nextBoolean());
+            case NULL:
+                in.nextNull();
+                return null;
+            default:
+                in.skipValue();
+                return null;
+        }
+    }
+
+    static int intValue(JsonReader in) throws IOException {
+        String value = string(in);
+        if (value == null) {return -1;}
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static double doubleValue(JsonReader in) throws IOException {
+        String value = string(in);
+        if (value == null) {return 0;}
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static float floatValue(JsonReader in) throws IOException {
+        String value = string(in);
+        if (value == null) {return Float.NaN;}
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.mongodb.client.model.Projections;
+import lombok.Getter;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+/**
+ * The few resource fields compared against SpigotMC, decoded straight from a projected {@link Document}.
+ */
+@Getter
+public class ResourceSnapshot {
+
+    public static final Bson PROJECTION = Projections.include(
+            "_id",
+            "updateDate",
+            "name",
+            "tag",
+            "premium",
+            "price",
+            "currency",
+            "downloads",
+            "rating.count",
+            "rating.average",
+            "version.id",
+            "author.id",
+            "fetch.restDue",
+            "fetch.restInterval",
+            "fetch.restLatest",
+            "fetch.latest"
+    );
+
+    private int id;
+    private String name;
+    private String tag;
+    private boolean premium;
+    private double price;
+    private String currency;
+    private int downloads;
+    private boolean rated;
+    private int ratingCount;
+    private float ratingAverage;
+    private Integer versionId;
+    private int authorId;
+    private long restInterval;
+    /**
+     * When the next check is due, <code>0</code> if never scheduled
+     */
+    private long restDue;
+    /**
+     * Last fetch by this or the main fetcher, <code>0</code> if never
+     */
+    private long lastFetched;
+
+    /**
+     * Name of the current version, looked up separately
+     */
+    private String versionName;
+
+    public static ResourceSnapshot fromDocument(Document document) {
+        ResourceSnapshot snapshot = new ResourceSnapshot();
+        snapshot.id = intValue(document.get("_id"), 0);
+        snapshot.name = document.getString("name");
+        snapshot.tag = document.getString("tag");
+        snapshot.premium = Boolean.TRUE.equals(document.get("premium"));
+        snapshot.price = document.get("price") instanceof Number ? ((Number) document.get("price")).doubleValue() : 0;
+        snapshot.currency = document.getString("currency");
+        snapshot.downloads = intValue(document.get("downloads"), 0);
+
+        Object rating = document.get("rating");
+        if (rating instanceof Document) {
+            snapshot.rated = true;
+            snapshot.ratingCount = intValue(((Document) rating).get("count"), 0);
+            Object average = ((Document) rating).get("average");
+            snapshot.ratingAverage = average instanceof Number ? ((Number) average).floatValue() : 0;
+        }
+
+        Object version = document.get("version");
+        if (version instanceof Document && ((Document) version).get("id") instanceof Number) {
+            snapshot.versionId = ((Number) ((Document) version).get("id")).intValue();
+        }
+
+        Object author = document.get("author");
+        if (author instanceof Document) {
+            snapshot.authorId = intValue(((Document) author).get("id"), 0);
+        }
+
+        Object fetch = document.get("fetch");
+        if (fetch instanceof Document) {
+            snapshot.restInterval = longValue(((Document) fetch).get("restInterval"), 0);
+            snapshot.restDue = longValue(((Document) fetch).get("restDue"), 0);
+            snapshot.lastFetched = lastFetched((Document) fetch);
+        }
+        return snapshot;
+    }
+
+    void setVersionName(String versionName) {
+        this.versionName = versionName;
+    }
+
+    static int intValue(Object value, int def) {
+        return value instanceof Number ? ((Number) value).intValue() : def;
+    }
+
+    static long longValue(Object value, long def) {
+        return value instanceof Number ? ((Number) value).longValue() : def;
+    }
+
+    static long lastFetched(Document fetch) {
+        return Math.max(longValue(fetch.get("restLatest"), 0), longValue(fetch.get("latest"), 0));
+    }
+
+}
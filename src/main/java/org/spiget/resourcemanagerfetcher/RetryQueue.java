@@ -0,0 +1,69 @@
+package org.spiget.resourcemanagerfetcher;
+
+import java.util.Random;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded queue of failed {@link FetchTask}s, each becoming available again after an exponential backoff with equal
+ * jitter: a random delay between half and all of the backoff, so retries spread out without coming back immediately.
+ */
+public class RetryQueue {
+
+    private final DelayQueue<FetchTask> queue = new DelayQueue<>();
+
+    private final int capacity;
+    private final int maxAttempts;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final Random random;
+
+    public RetryQueue(int capacity, int maxAttempts, long baseDelay, long maxDelay) {
+        this(capacity, maxAttempts, baseDelay, maxDelay, null);
+    }
+
+    /**
+     * @param random source of the jitter, e.g. seeded for reproducible replays, <code>null</code> for {@link ThreadLocalRandom}
+     */
+    public RetryQueue(int capacity, int maxAttempts, long baseDelay, long maxDelay, Random random) {
+        this.capacity = capacity;
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.random = random;
+    }
+
+    /**
+     * @return <code>false</code> if the task used up its attempts or the queue is full
+     */
+    public boolean offer(FetchTask task) {
+        if (task.attempt >= maxAttempts || queue.size() >= capacity) {
+            return false;
+        }
+        task.attempt++;
+        long ceiling = Math.min(maxDelay, baseDelay << Math.min(20, task.attempt - 1));
+        task.dueAt = System.currentTimeMillis() + ceiling / 2 + (long) ((random != null ? random : ThreadLocalRandom.current()).nextDouble() * (ceiling - ceiling / 2 + 1));
+        return queue.offer(task);
+    }
+
+    /**
+     * @return the next task whose backoff has passed, or <code>null</code>
+     */
+    public FetchTask pollDue() {
+        return queue.poll();
+    }
+
+    public FetchTask poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+}
@@ -1,7 +1,10 @@
 package org.spiget.resourcemanagerfetcher;
 
 import com.google.gson.JsonObject;
+import io.sentry.Sentry;
+import org.influxdb.dto.Point;
 import org.inventivetalent.metrics.IntervalFlusher;
+import org.inventivetalent.metrics.Metric;
 import org.inventivetalent.metrics.Metrics;
 
 import java.util.concurrent.TimeUnit;
@@ -10,10 +13,44 @@ public class SpigetMetrics {
 
     protected Metrics metrics;
 
+    protected Metric retries;
+
     public SpigetMetrics(JsonObject config) {
         this.metrics = new Metrics(config.get("metrics.url").getAsString(), config.get("metrics.user").getAsString(), config.get("metrics.password").getAsString());
         this.metrics.getInflux().setDatabase("spiget").setRetentionPolicy("three_months");
         this.metrics.setFlusher(new IntervalFlusher(this.metrics, 30, TimeUnit.SECONDS));
+
+        this.retries = this.metrics.metric("spiget", "rest_retries");
+    }
+
+    /**
+     * @param result <code>queued</code>, <code>dropped</code> or <code>exhausted</code>
+     */
+    public void countRetry(String type, String result) {
+        try {
+            retries
+                    .tag("type", type)
+                    .tag("result", result)
+                    .inc();
+        } catch (Exception e) {
+            Sentry.captureException(e);
+        }
+    }
+
+    public void writeBreaker(String type, ThrottleBreaker breaker, double rate, int queuedRetries) {
+        try {
+            metrics.getInflux().write(Point
+                    .measurement("rest_breaker")
+                    .tag("type", type)
+                    .tag("state", breaker.getState().name())
+                    .addField("factor", breaker.getFactor())
+                    .addField("ratio", breaker.getLastRatio())
+                    .addField("rate", rate)
+                    .addField("retries", queuedRetries)
+                    .build());
+        } catch (Exception e) {
+            Sentry.captureException(e);
+        }
     }
 
 }
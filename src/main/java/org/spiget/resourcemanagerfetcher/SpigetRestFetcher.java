@@ -1,38 +1,38 @@
 package org.spiget.resourcemanagerfetcher;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.mongodb.client.FindIterable;
-import com.mongodb.client.model.Filters;
+import com.mongodb.client.MongoCollection;
 import io.sentry.Sentry;
 import lombok.extern.log4j.Log4j2;
 import org.apache.logging.log4j.Level;
 import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
 import org.influxdb.dto.Point;
 import org.inventivetalent.metrics.Metric;
 import org.jetbrains.annotations.Nullable;
 import org.spiget.client.SpigetClient;
 import org.spiget.client.json.JsonClient;
-import org.spiget.client.json.JsonResponse;
 import org.spiget.data.UpdateRequest;
-import org.spiget.data.author.Author;
-import org.spiget.data.resource.Rating;
-import org.spiget.data.resource.Resource;
-import org.spiget.data.resource.SpigetIcon;
-import org.spiget.data.resource.version.ResourceVersion;
 import org.spiget.database.DatabaseClient;
-import org.spiget.database.DatabaseParser;
-import org.spiget.database.SpigetGson;
 
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Log4j2
 public class SpigetRestFetcher {
 
-    public static JsonObject config;
+    public static FetcherConfig config;
 
     public static DatabaseClient databaseClient;
 
@@ -41,535 +41,555 @@ public class SpigetRestFetcher {
     int itemsPerFetch = 500;
     long delay = 1000;
     int start = 0;
+    int threads = 4;
+    long statusInterval = 5000;
+
+    int maxAttempts = 5;
+    SpigotApiClient apiClient;
+    static WriteBatcher writes;
+    static WorkJournal journal;
+    static ChangeFeed feed;
+    PendingUpdateRequests updateRequests;
+    ExecutorService workers;
+    List<CheckStream<?, ?>> streams = new ArrayList<>();
+    ExecutorService streamExecutor;
+    BulkRefresh bulkRefresh;
 
     long startTime;
     long endTime;
 
+    volatile boolean running;
+    volatile long lastCycleEnd;
+
+    PartitionLeases leases;
+    PartitionLeases.Partition partition;
+    PipelineMetrics pipeline = new PipelineMetrics();
+    FetchProgress progress = new FetchProgress(pipeline);
+    StatusServer statusServer;
+
     static Metric UPDATE_REQUEST_METRIC;
+    static Metric DIGEST_METRIC;
+
+    static DigestStore digests;
+    ChangeScheduler scheduler;
+    ScheduledExecutorService startup = Executors.newScheduledThreadPool(2, r -> {
+        Thread thread = new Thread(r, "startup");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean firstRequest = new AtomicBoolean();
+    long authorInterval = 86400000/*24h*/;
+    /**
+     * Seeded in replay mode so the jitter of replayed runs is reproducible, <code>null</code> otherwise
+     */
+    @Nullable
+    Random random;
 
+    /**
+     * @return this, or <code>null</code> if the config is invalid or startup failed, which is logged
+     */
     @Nullable
     public SpigetRestFetcher init() throws IOException {
-        Sentry.init(options -> {
+        long initStart = System.currentTimeMillis();
+        CompletableFuture<Void> sentryReady = CompletableFuture.runAsync(() -> Sentry.init(options -> {
             options.setEnableExternalConfiguration(true);
-        });
+        }));
 
-        config = new JsonParser().parse(new FileReader("config.json")).getAsJsonObject();
+        config = FetcherConfig.load(new File("config.json"));
+        List<String> problems = config.validate();
+        if (!problems.isEmpty()) {
+            for (String problem : problems) {
+                log.fatal("Invalid config: {}", problem);
+            }
+            log.fatal("Aborting.");
+            return null;
+        }
 
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
-                try {
-                    log.info("Disconnecting database...");
-                    databaseClient.disconnect();
-                } catch (IOException e) {
-                    Sentry.captureException(e);
-                    log.warn("Failed to disconnect from database", e);
+                if (writes != null) {
+                    try {
+                        log.info("Flushing pending writes...");
+                        if (!writes.close()) {
+                            log.warn("Some writes are left unwritten");
+                        }
+                    } catch (Exception e) {
+                        Sentry.captureException(e);
+                        log.warn("Failed to flush pending writes", e);
+                    }
+                }
+                if (journal != null) {
+                    journal.close();
+                }
+                if (feed != null) {
+                    feed.close();
+                }
+                if (apiClient != null) {
+                    apiClient.close();
+                }
+                if (digests != null) {
+                    try {
+                        log.info("Saving digests...");
+                        digests.save();
+                    } catch (IOException e) {
+                        Sentry.captureException(e);
+                        log.warn("Failed to save digests", e);
+                    }
+                }
+                if (databaseClient != null) {
+                    try {
+                        log.info("Disconnecting database...");
+                        databaseClient.disconnect();
+                    } catch (IOException e) {
+                        Sentry.captureException(e);
+                        log.warn("Failed to disconnect from database", e);
+                    }
                 }
             }
         });
 
-        metrics = new SpigetMetrics(config);
+        // the slow parts start in parallel, and connecting retries with backoff instead of aborting on the first failure
+        int attempts = config.getInt("startup.attempts", 5);
+        long baseDelay = config.getLong("startup.baseDelay", 1000);
+        long maxDelay = config.getLong("startup.maxDelay", 30000);
+        CompletableFuture<Void> metricsReady = CompletableFuture.runAsync(() -> {
+            metrics = new SpigetMetrics(config.getJson());
 
-        SpigetClient.metrics = metrics.metrics;
-        SpigetClient.project = "rest-fetcher";
+            SpigetClient.metrics = metrics.metrics;
+            SpigetClient.project = "rest-fetcher";
 
-        UPDATE_REQUEST_METRIC = metrics.metrics.metric("spiget", "update_requests");
-
-        {
-            log.info("Initializing & testing database connection...");
-            long testStart = System.currentTimeMillis();
+            UPDATE_REQUEST_METRIC = metrics.metrics.metric("spiget", "update_requests");
+            DIGEST_METRIC = metrics.metrics.metric("spiget", "rest_digest");
+        });
+        CompletableFuture<Void> digestsReady = CompletableFuture.runAsync(() -> {
+            digests = new DigestStore(new File(config.getString("digest.file", "digests.bin")));
             try {
-                if (config.has("database.url")) {
-                    databaseClient = new DatabaseClient(config.get("database.url").getAsString(), config.get("database.name").getAsString());
-                } else {
-                    databaseClient = new DatabaseClient(
-                            config.get("database.name").getAsString(),
-                            config.get("database.host").getAsString(),
-                            config.get("database.port").getAsInt(),
-                            config.get("database.user").getAsString(),
-                            config.get("database.pass").getAsString().toCharArray(),
-                            config.get("database.db").getAsString());
-                }
-                databaseClient.connect(config.get("database.timeout").getAsInt());
-                databaseClient.collectionCount();
-                log.info("Connection successful (" + (System.currentTimeMillis() - testStart) + "ms)");
-            } catch (Exception e) {
+                digests.load();
+            } catch (IOException e) {
                 Sentry.captureException(e);
-                log.fatal("Connection failed after " + (System.currentTimeMillis() - testStart) + "ms", e);
-                log.fatal("Aborting.");
-
-                System.exit(-1);
-                return null;
+                log.warn("Failed to load digest snapshot, starting empty", e);
             }
+        });
+        CompletableFuture<DatabaseClient> databaseReady = StartupProbe.retry("Database connection", this::connectDatabase, attempts, baseDelay, maxDelay, startup);
+
+        JsonClient.userAgent = config.getUserAgent();
+        JsonClient.logConn = config.isLogConnections();
+
+        String client = config.getClient();
+
+        itemsPerFetch = config.getInt("database.itemsPerFind", 500);
+        delay = config.getLong("fetch.pause", 2000);
+        start = config.getInt("fetch.start", 0);
+        statusInterval = config.getLong("status.interval", statusInterval);
+        threads = config.getInt("fetch.threads", threads);
+        // fall back to the old fixed pause if no explicit rate is configured
+        double rate = config.getDouble("fetch.rate", 1000.0 / delay);
+        log.info("Fetching with {} threads at {} requests/s", threads, rate);
+
+        scheduler = ChangeScheduler.fromConfig(config);
+        authorInterval = config.getLong("schedule.authorInterval", authorInterval);
+        maxAttempts = config.getInt("retry.maxAttempts", maxAttempts);
+        if ("replay".equals(client)) {
+            random = new Random(config.getLong("replay.randomSeed", 0));
         }
-
-        JsonClient.userAgent = config.get("request.userAgent").getAsString();
-        JsonClient.logConn = config.get("debug.connections").getAsBoolean();
-
-        {
-            log.info("Testing SpigotMC connection...");
-            long testStart = System.currentTimeMillis();
-            try {
-                JsonResponse response = JsonClient.get("https://api.spigotmc.org/simple/0.1/index.php?action=getResource&id=2");
-                if (response == null) {return null;}
-                int code = response.code;
-                if (code >= 200 && code < 400) {
-                    log.info("Connection successful (" + (System.currentTimeMillis() - testStart) + "ms)");
-                } else {
-                    log.fatal("Connection failed with code " + code + " after " + (System.currentTimeMillis() - testStart) + "ms");
-                    log.fatal("Aborting.");
-                    log.info(response.json);
-
-                    System.exit(-1);
-                    return null;
-                }
-            } catch (Exception e) {
-                Sentry.captureException(e);
-                log.fatal("Connection failed after " + (System.currentTimeMillis() - testStart) + "ms", e);
-                log.fatal("Aborting.");
-
-                System.exit(-1);
-                return null;
-            }
+        if (!config.getString("feed.dir", "").isEmpty()) {// opt-in
+            feed = new ChangeFeed(new File(config.getString("feed.dir", "")),
+                    config.getLong("feed.maxBytes", 67108864/*64MB*/),
+                    config.getInt("feed.batchSize", 1000),
+                    config.getLong("feed.flushInterval", 5000));
+            ChangeEvents.setFeed(feed);
         }
+        AtomicInteger workerCounter = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "fetch-worker-" + workerCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
 
-        itemsPerFetch = config.get("database.itemsPerFind").getAsInt();
-        delay = config.get("fetch.pause").getAsLong();
-        start = config.get("fetch.start").getAsInt();
+        String baseUrl = config.getString("request.baseUrl", SpigotApiClient.DEFAULT_BASE_URL);
+        ReplayApiClient replay = null;
+        if ("replay".equals(client)) {
+            replay = new ReplayApiClient(new File(config.getString("replay.corpus", "corpus.ndjson.gz")), config.getInt("replay.scale", 1),
+                    config.getLong("replay.latency", 200),
+                    config.getLong("replay.jitter", 100),
+                    pipeline, random);
+            apiClient = replay;
+        } else if ("legacy".equals(client)) {
+            apiClient = new LegacyApiClient(baseUrl, workers, pipeline);
+        } else {
+            apiClient = new HttpApiClient(baseUrl, JsonClient.userAgent,
+                    Duration.ofMillis(config.getLong("request.timeout", 10000)),
+                    workers, pipeline);
+        }
+        if (!"replay".equals(client)) {
+            // only reported, requests back off on their own while SpigotMC is unreachable
+            SpigotApiClient probeClient = apiClient;
+            metricsReady.thenRun(() -> StartupProbe.retry("SpigotMC connection", () -> probeSpigot(probeClient), attempts, baseDelay, maxDelay, startup));
+        }
+        if (config.has("request.record")) {
+            apiClient = new RecordingApiClient(apiClient, new File(config.getString("request.record", null)));
+        }
 
-        return this;
-    }
+        CheckStream<ResourceSnapshot, ResourcePayload> resourceStream = addStream(new ResourceChecker(this), rate * config.getDouble("fetch.share.resource", 0.7));
+        addStream(new AuthorChecker(this), rate * config.getDouble("fetch.share.author", 0.3));
+        if (config.getBoolean("bulk.enabled", false)) {
+            bulkRefresh = new BulkRefresh(this, resourceStream,
+                    config.getInteger("bulk.category"),
+                    config.getInt("bulk.maxPages", 5000));
+        }
+        AtomicInteger streamCounter = new AtomicInteger();
+        streamExecutor = Executors.newFixedThreadPool(streams.size(), r -> new Thread(r, "check-stream-" + streamCounter.incrementAndGet()));
 
-    public void fetch() {
-        startTime = System.currentTimeMillis();
+        try {
+            databaseClient = databaseReady.join();
+            CompletableFuture.allOf(sentryReady, metricsReady, digestsReady).join();
+        } catch (CompletionException e) {
+            Sentry.captureException(e.getCause());
+            log.fatal("Startup failed after {}ms", System.currentTimeMillis() - initStart, e.getCause());
+            log.fatal("Aborting.");
+            return null;
+        }
 
+        // everything below needs the database
+        // opening compacts away the previous run's unwritten mutations, so only do it once they can be requeued
+        journal = new WorkJournal(new File(config.getString("journal.file", "journal.log")),
+                config.getLong("journal.syncInterval", 1000));
         try {
-            databaseClient.updateStatus("fetch.rest.start", startTime);
-            Number lastEnd = databaseClient.getStatus("fetch.rest.end", 0L);
-            databaseClient.updateStatus("fetch.rest.lastEnd", lastEnd.longValue());
-            databaseClient.updateStatus("fetch.rest.end", 0);
-        } catch (Exception e) {
+            journal.open();
+        } catch (IOException e) {
             Sentry.captureException(e);
-            log.log(Level.ERROR, "Failed to update status", e);
+            log.log(Level.WARN, "Failed to open journal, running without", e);
+            journal = null;
+        }
+        writes = new WriteBatcher(pipeline, journal,
+                config.getInt("database.batchSize", 500),
+                config.getLong("database.flushInterval", 5000));
+        updateRequests = new PendingUpdateRequests(databaseClient.getUpdateRequestsCollection(), writes);
+        updateRequests.ensureIndex();
+        if (journal != null) {
+            Map<String, MongoCollection<Document>> collections = new HashMap<>();
+            for (MongoCollection<Document> collection : Arrays.asList(databaseClient.getResourcesCollection(), databaseClient.getAuthorsCollection(), databaseClient.getUpdateRequestsCollection())) {
+                collections.put(collection.getNamespace().getCollectionName(), collection);
+            }
+            int requeued = journal.requeue(writes, collections);
+            if (requeued > 0) {
+                log.info("Writing {} mutations left over from the previous run", requeued);
+                writes.flush();
+            }
+        }
+        leases = new PartitionLeases(databaseClient.getStatusCollection(),
+                config.getString("shard.node", ManagementFactory.getRuntimeMXBean().getName() + "-" + Integer.toHexString(new Random().nextInt())),
+                config.getInt("shard.partitions", 1),
+                config.getLong("shard.leaseTtl", 60000),
+                config.getLong("shard.idle", 3600000));
+        if (replay != null && config.getBoolean("replay.seed", false)) {
+            new ReplaySeeder(databaseClient, replay, config.getInt("replay.scale", 1)).seed();
+        }
+        for (CheckStream<?, ?> stream : streams) {
+            stream.ensureIndex();
         }
 
-        int n = start;
-        int c = 0;
-        while ((c = fetchN(n)) >= itemsPerFetch) {
-            n++;
+        if (config.getInt("health.port", 0) > 0) {// opt-in
+            startStatusServer(config.getInt("health.port", 0));
         }
 
-        endTime = System.currentTimeMillis();
+        log.info("Initialized in {}ms", System.currentTimeMillis() - initStart);
+        return this;
+    }
+
+    DatabaseClient connectDatabase() throws Exception {
+        DatabaseClient client;
+        if (config.has("database.url")) {
+            client = new DatabaseClient(config.getString("database.url", null), config.getString("database.name", null));
+        } else {
+            client = new DatabaseClient(
+                    config.getString("database.name", null),
+                    config.getString("database.host", null),
+                    config.getInt("database.port", 27017),
+                    config.getString("database.user", null),
+                    config.getString("database.pass", "").toCharArray(),
+                    config.getString("database.db", null));
+        }
         try {
-            databaseClient.updateStatus("fetch.rest.end", endTime);
-            databaseClient.updateStatus("fetch.rest.duration", (endTime - startTime));
+            client.connect(config.getDatabaseTimeout());
+            client.collectionCount();
+            return client;
         } catch (Exception e) {
-            Sentry.captureException(e);
-            e.printStackTrace();
+            try {
+                client.disconnect();
+            } catch (Exception ignored) {
+            }
+            throw e;
         }
+    }
 
+    /**
+     * Requests a resource through the client the checks use, so the configured base url and user agent are what's probed
+     */
+    int probeSpigot(SpigotApiClient client) throws Exception {
+        SpigotApiClient.Response response = client.getResource(2).get(config.getLong("request.timeout", 10000), TimeUnit.MILLISECONDS);
+        if (response.code < 200 || response.code >= 400) {throw new IOException("Got code " + response.code);}
+        return response.code;
+    }
+
+    /**
+     * Reports the time from process start to the first request sent to SpigotMC, once per process
+     */
+    void requestSent() {
+        if (firstRequest.get() || !firstRequest.compareAndSet(false, true)) {return;}
+        long millis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        log.info("First request sent {}ms after start", millis);
         try {
+            databaseClient.updateStatus("fetch.rest.timeToFirstRequest", millis);
             metrics.metrics.getInflux().write(Point
-                    .measurement("rest_fetch_duration")
-                    .addField("duration", (endTime - startTime))
+                    .measurement("rest_time_to_first_request")
+                    .addField("duration", millis)
                     .build());
         } catch (Exception e) {
             Sentry.captureException(e);
         }
+    }
 
-        log.log(Level.INFO, "Finished. Took " + (((double) endTime - startTime) / 1000.0 / 60.0) + " minutes total.");
+    /**
+     * Adds a parallel check stream with its own share of the request rate
+     */
+    <T, P> CheckStream<T, P> addStream(Checker<T, P> checker, double rate) {
+        RateLimiter rateLimiter = new RateLimiter(rate, 1);
+        ThrottleBreaker breaker = new ThrottleBreaker(rateLimiter, rate,
+                config.getInt("breaker.window", 50),
+                config.getDouble("breaker.tripRatio", 0.2),
+                config.getDouble("breaker.recoverRatio", 0.05),
+                config.getDouble("breaker.minFactor", 0.1));
+        RetryQueue retries = new RetryQueue(
+                config.getInt("retry.queueSize", 1000),
+                maxAttempts,
+                config.getLong("retry.baseDelay", 5000),
+                config.getLong("retry.maxDelay", 300000),
+                random);
+        CheckStream<T, P> stream = new CheckStream<>(this, checker, rateLimiter, breaker, retries, threads);
+        streams.add(stream);
+        log.info("Checking {}s at {} requests/s", checker.getType(), rate);
+        return stream;
     }
 
-    public int fetchN(int n) {
-        log.info("Running Fetch #" + n);
-        int c = 0;
+    public void fetch() {
+        // an unfinished cycle in the journal continues with its start time, so the due filter and update request keys match
+        long journaledStart = journal != null ? journal.getCycleStart() : 0;
+        startTime = journaledStart != 0 ? journaledStart : System.currentTimeMillis();
+        running = true;
+        if (journal != null) {
+            journal.begin(startTime);
+        }
+        if (feed != null) {
+            feed.begin(startTime);
+        }
 
+        boolean resume = journaledStart != 0;
         try {
-            databaseClient.updateStatus("fetch.rest.type", "resource");
-            databaseClient.updateStatus("fetch.rest.num", n);
-            databaseClient.updateStatus("fetch.rest.item.max", itemsPerFetch);
-
-            //// RESOURCES
-
-            FindIterable<Document> iterable = databaseClient.getResourcesCollection().find(
-                    Filters.and(
-                            Filters.or(
-                                    Filters.exists("fetch.restLatest", false),
-                                    Filters.lt("fetch.restLatest", startTime - 8.64e+7/*24h*/)
-                            ),
-                            Filters.or(
-                                    Filters.exists("fetch.latest", false),
-                                    Filters.lt("fetch.latest", startTime - 8.64e+7/*24h*/)
-                            )
-                    )
-            ).sort(new Document("updateDate", 1)).limit(itemsPerFetch).skip(n * itemsPerFetch);
-            long updateStart = System.currentTimeMillis();
-
-            databaseClient.updateStatus("fetch.rest.n.start", updateStart);
-
-            for (Document document : iterable) {
-                c++;
-
-                log.info("R F" + n + " I" + c);
-
-                try {
-                    databaseClient.updateStatus("fetch.rest.item", c);
+            writes.flush();// so requests left over from the journal are seen
+            updateRequests.seed();
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            log.log(Level.WARN, "Failed to load pending update requests", e);
+        }
+        try {
+            databaseClient.updateStatus("fetch.rest.start", startTime);
+            Number lastEnd = databaseClient.getStatus("fetch.rest.end", 0L);
+            databaseClient.updateStatus("fetch.rest.lastEnd", lastEnd.longValue());
+            databaseClient.updateStatus("fetch.rest.end", 0);
 
-                    try {
-                        Thread.sleep(delay);
-                    } catch (InterruptedException e) {
-                        Sentry.captureException(e);
-                        e.printStackTrace();
-                    }
-                    Resource resource = SpigetGson.RESOURCE.fromJson(DatabaseParser.toJson(document), Resource.class);
-                    JsonResponse response = JsonClient.get("https://api.spigotmc.org/simple/0.2/index.php?action=getResource&id=" + resource.getId());
-                    if (response == null) {continue;}
-                    if (response.code != 200) {
-                        log.warn("Got Code " + response.code + " for getResource #" + resource.getId());
-                        if (response.code == 503) {// Cloudflare
-                        } else if (response.code == 404) {// Resource not found
-                            log.info("Scheduling #" + resource.getId() + " for deletion");
-                            requestUpdate(resource.getId(), "resource", true);
-                        } else {
-                            log.error("Unexpected status code");
-                        }
-                    } else {
-                        if (!response.json.isJsonObject()) {
-                            log.warn("Expected response to be a json object but was not.");
-                            log.warn(response.json);
-                        } else {
-                            JsonObject json = response.json.getAsJsonObject();
-                            boolean modifiedDb = false;
-
-                            //TITLE
-                            String title = json.get("title").getAsString();
-                            if (resource.getName() != null && title != null && !resource.getName().equals(title)) {// name changed
-                                log.info("Name of #" + resource.getId() + " changed  \"" + resource.getName() + "\" -> \"" + title + "\"");
-                                updateName(resource.getId(), title);
-                                modifiedDb = true;
-                            }
-
-                            //TAG
-                            String tag = json.get("tag").getAsString();
-                            if (resource.getTag() != null && tag != null && !resource.getTag().equals(tag)) {// tag changed
-                                log.info("Tag of #" + resource.getId() + " changed  \"" + resource.getTag() + "\" -> \"" + tag + "\"");
-                                updateTag(resource.getId(), tag);
-                                modifiedDb = true;
-                            }
-
-                            String requestUpdate = null;
-
-                            //PREMIUM STUFF
-                            boolean isPremium = false;
-                            JsonObject premiumJson = json.has("premium") ? json.get("premium").getAsJsonObject() : null;
-                            if (premiumJson != null) {
-                                if (premiumJson.has("price") && premiumJson.get("price").getAsDouble() > 0.1) {
-                                    isPremium = true;
-                                    if (!resource.isPremium()) {
-                                        log.warn("SpigotMC says #" + resource.getId() + " is premium but DB says it's not!");
-                                    }
-                                    if (!resource.isPremium() || resource.getPrice() != premiumJson.get("price").getAsDouble() || !resource.getCurrency().equals(premiumJson.get("currency").getAsString().toUpperCase())) {
-                                        updatePrice(resource.getId(), premiumJson.get("price").getAsDouble(), premiumJson.get("currency").getAsString().toUpperCase());
-                                        modifiedDb = true;
-                                    }
-                                }
-                            }
-
-                            int updateCount = -1;
-                            JsonObject statsJson = json.get("stats").getAsJsonObject();
-                            if (statsJson != null) {
-                                //DOWNLOADS
-                                int downloads = statsJson.get("downloads").getAsInt();
-                                if (resource.getDownloads() != downloads) {
-                                    log.info("Downloads of #" + resource.getId() + " changed  " + resource.getDownloads() + " -> " + downloads);
-                                    updateDownloads(resource.getId(), downloads);
-                                    modifiedDb = true;
-                                }
-
-                                //RATING
-                                Rating rating = resource.getRating();
-                                if (rating != null) {
-                                    JsonElement reviewsJson = statsJson.get("reviews");
-                                    int ratingCount;
-                                    if (reviewsJson.isJsonObject()) {
-                                        ratingCount = reviewsJson.getAsJsonObject().get("total").getAsInt();
-                                    } else {
-                                        ratingCount = reviewsJson.getAsInt();
-                                    }
-                                    float ratingAvg = statsJson.get("rating").getAsFloat();
-                                    if (ratingCount > rating.getCount()) {
-                                        requestUpdate = "moreRatings";
-                                        log.info("Ratings of #" + resource.getId() + " changed  " + rating.getCount() + " -> " + ratingCount);
-                                        updateRatingCount(resource.getId(), ratingCount);
-                                        modifiedDb = true;
-                                    }
-                                    if (ratingAvg != rating.getAverage()) {
-                                        //									requestUpdate = true;
-                                        updateRatingAvg(resource.getId(), ratingAvg);
-                                        modifiedDb = true;
-                                    }
-                                }
-
-                                //UPDATES
-                                // this might not ever change for some resources, since the main fetcher only updates the first few pages of resource updates
-                                //                                int updates = statsJson.get("updates").getAsInt();
-                                //                                updateCount = updates;
-                                //                                if (updates > resource.getUpdates().size()) {
-                                //                                    if (!isPremium) {
-                                //                                        requestUpdate = true;
-                                //                                    }
-                                //                                }
-                            }
-
-                            //VERSION
-                            String version = json.get("current_version").getAsString();
-                            if (version != null && resource.getVersion() != null) {
-                                Document versionDocument = databaseClient.getResourceVersionsCollection().find(new Document("_id", resource.getVersion().id)).limit(1).first();
-                                if (versionDocument != null) {
-                                    String versionName = versionDocument.getString("name");
-                                    if (versionName != null) {
-                                        if (!version.equals(versionName)) {
-                                            log.info("Version of #" + resource.getId() + " changed  \"" + versionName + "\" -> \"" + version + "\"");
-                                            requestUpdate = "versionChange";
-                                            //                                            if (!isPremium) {
-                                            //                                                log.info("Requesting an update!");
-                                            //                                                requestUpdate = "versionChange";
-                                            //                                            } else {
-                                            //                                                //TODO
-                                            //                                            }
-                                        } else if (updateCount != -1 && !versionDocument.containsKey("uuid")) {
-                                            log.info("Adding UUID to version " + version + " of #" + resource.getId());
-                                            addVersionUuid(resource.getId(), resource.getAuthor().getId(), version, updateCount, versionDocument.containsKey("releaseDate") ? new Date(((Number) versionDocument.get("releaseDate")).longValue() * 1000) : new Date());
-                                        }
-                                    }
-                                }
-                            }
-
-                            if (!modifiedDb) {
-                                setResourceUpdateTimestamp(resource.getId());
-                            }
-
-                            if (requestUpdate != null) {
-                                log.info("Requesting update for #" + resource.getId());
-                                requestUpdate(resource.getId(), "resource", false);
-                                try {
-                                    UPDATE_REQUEST_METRIC
-                                            .tag("reason", requestUpdate)
-                                            .inc();
-                                } catch (Exception e) {
-                                    Sentry.captureException(e);
-                                }
-                            }
+            resume |= lastEnd.longValue() == 0;// previous run didn't finish, continue where it stopped
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            log.log(Level.ERROR, "Failed to update status", e);
+        }
 
-                        }
-                    }
-                } catch (Exception e) {
-                    Sentry.captureException(e);
-                    log.log(Level.WARN, "Exception while trying to check resource", e);
-                }
+        for (CheckStream<?, ?> stream : streams) {
+            try {
+                stream.backfillDue();
+            } catch (Exception e) {
+                Sentry.captureException(e);
+                log.warn("Failed to backfill due times of {}s", stream.getType(), e);
             }
+        }
+        try {
+            long total = 0;
+            for (CheckStream<?, ?> stream : streams) {
+                total += stream.countDue(startTime);
+            }
+            log.info("{} stale resources & authors to check", total);
+            progress.start(total, itemsPerFetch);
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            log.log(Level.WARN, "Failed to count stale items", e);
+            progress.start(0, itemsPerFetch);
+        }
+        progress.setType("resource,author");
+        progress.startPublishing(databaseClient, statusInterval);
 
-            //// AUTHORS
-
-            databaseClient.updateStatus("fetch.rest.type", "author");
-
-            iterable = databaseClient.getAuthorsCollection().find(
-                    Filters.and(
-                            Filters.or(
-                                    Filters.exists("fetch.restLatest", false),
-                                    Filters.lt("fetch.restLatest", startTime - 8.64e+7/*24h*/)
-                            ),
-                            Filters.or(
-                                    Filters.exists("fetch.latest", false),
-                                    Filters.lt("fetch.latest", startTime - 8.64e+7/*24h*/)
-                            )
-                    )
-            ).sort(new Document("_id", 1)).limit(itemsPerFetch).skip(n * itemsPerFetch);
-
-            for (Document document : iterable) {
-                c++;
-
-                log.info("A F" + n + " I" + c);
-
+        leases.reset();
+        while ((partition = leases.claim(resume)) != null) {
+            PartitionLeases.Partition claimed = partition;
+            if (bulkRefresh != null && claimed.index == 0) {// the listings cover all partitions, so only one node runs them
                 try {
-                    databaseClient.updateStatus("fetch.rest.item", c);
-
-                    try {
-                        Thread.sleep(delay);
-                    } catch (InterruptedException e) {
-                        Sentry.captureException(e);
-                        e.printStackTrace();
-                    }
-                    Author author = SpigetGson.AUTHOR.fromJson(DatabaseParser.toJson(document), Author.class);
-                    JsonResponse response = JsonClient.get("https://api.spigotmc.org/simple/0.2/index.php?action=getAuthor&id=" + author.getId());
-                    if (response == null) {continue;}
-                    if (response.code != 200) {
-                        log.warn("Got Code " + response.code + " for getAuthor #" + author.getId());
-                        if (response.code == 503) {// Cloudflare
-                        } else if (response.code == 404) {// Author not found
-                            log.info("Scheduling #" + author.getId() + " for deletion");
-                            requestUpdate(author.getId(), "author", true);
-                            deleteAuthor(author.getId());
-                        } else {
-                            log.error("Unexpected status code");
-                        }
-                    } else {
-                        if (!response.json.isJsonObject()) {
-                            log.warn("Expected response to be a json object but was not.");
-                            log.warn(response.json);
-                        } else {
-                            JsonObject json = response.json.getAsJsonObject();
-                            boolean modifiedDb = false;
-
-                            String username = json.get("username").getAsString();
-                            if (author.getName() != null && username != null && !author.getName().equals(username)) {// name changed
-                                log.info("Username of #" + author.getId() + " changed  \"" + author.getName() + "\" -> \"" + username + "\"");
-                                updateUserName(author.getId(), username);
-                                modifiedDb = true;
-                            }
-
-                            JsonElement identitiesEl = json.get("identities");
-                            if (identitiesEl.isJsonObject()) {
-                                JsonObject identities = identitiesEl.getAsJsonObject();
-                                Map identityMap = new HashMap();
-                                if (author.getIdentities() != null) {
-                                    identityMap.putAll(author.getIdentities());
-                                }
-                                if (identities != null) {
-                                    boolean changed = false;
-                                    for (Map.Entry<String, JsonElement> entry : identities.entrySet()) {
-                                        if (!identityMap.containsKey(entry.getKey()) || (entry.getValue() != null && !entry.getValue().getAsString().equals(author.getIdentities().get(entry.getKey())))) {
-                                            //noinspection unchecked
-                                            identityMap.put(entry.getKey(), entry.getValue().getAsString());
-                                            log.info(entry.getKey() + " identity of #" + author.getId() + " changed  \"" + identityMap.get(entry.getKey()) + "\" -> \"" + entry.getValue().getAsString() + "\"");
-                                            changed = true;
-                                        }
-                                    }
-                                    if (changed) {
-                                        //noinspection unchecked
-                                        updateIdentities(author.getId(), identityMap);
-                                        modifiedDb = true;
-                                    }
-                                }
-                            }
-
-                            JsonElement avatarJson = json.get("avatar");
-                            if (avatarJson != null && author.getIcon() != null) {
-                                SpigetIcon icon = author.getIcon();
-                                if(avatarJson.isJsonObject()) {
-                                    JsonObject avatar = avatarJson.getAsJsonObject();
-                                    if ((avatar.get("info") != null && !avatar.get("info").getAsString().equals(icon.getInfo())) || (avatar.get("hash") != null && !avatar.get("hash").getAsString().equals(icon.getHash()))) {
-                                        updateAvatar(author.getId(), avatar.get("info").getAsString(), avatar.get("hash").getAsString());
-                                        modifiedDb = true;
-                                    }
-                                } else if (avatarJson.isJsonPrimitive()) {
-                                    String avatar =avatarJson.getAsString();
-                                    if (!Objects.equals(avatar, icon.getUrl())) {
-                                        updateAvatar(author.getId(), avatar);
-                                    }
-                                    modifiedDb = true;
-                                }
-                            }
-
-                            if (!modifiedDb) {
-                                setAuthorUpdateTimestamp(author.getId());
-                            }
-                        }
-                    }
+                    bulkRefresh.run();
                 } catch (Exception e) {
                     Sentry.captureException(e);
-                    log.log(Level.WARN, "Exception while trying to check resource", e);
+                    log.log(Level.ERROR, "Bulk refresh failed", e);
                 }
             }
+            List<CompletableFuture<Void>> futures = new ArrayList<>(streams.size());
+            for (CheckStream<?, ?> stream : streams) {
+                futures.add(CompletableFuture.runAsync(() -> stream.run(claimed, start), streamExecutor));
+            }
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            } catch (Exception e) {
+                Sentry.captureException(e);
+                log.error("Exception while checking partition {}", partition, e);
+            }
+            leases.release(partition, partition.isHeld());
+        }
 
-            long updateEnd = System.currentTimeMillis();
+        try {
+            digests.save();
+        } catch (IOException e) {
+            Sentry.captureException(e);
+            log.warn("Failed to save digests", e);
+        }
+        boolean written = writes.flush();
+        if (journal != null) {
+            journal.end(written);
+        }
+        if (feed != null) {
+            Document report = feed.end();
+            log.info("Changes in this run: {}", report.toJson(JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).build()));
             try {
-                databaseClient.updateStatus("fetch.rest.n.end", updateEnd);
-                databaseClient.updateStatus("fetch.rest.n.duration", (updateEnd - updateStart));
+                databaseClient.updateStatus("fetch.rest.changes", report);
             } catch (Exception e) {
                 Sentry.captureException(e);
-                log.log(Level.ERROR, "Failed to update status", e);
+                log.log(Level.WARN, "Failed to update status", e);
             }
+        }
+        progress.stopPublishing();
+        progress.publish(databaseClient);
 
-            log.log(Level.INFO, "Finished fetch #" + n + ". Took " + (((double) updateEnd - updateStart) / 1000.0 / 60.0) + " minutes to update " + c + " resources.");
+        endTime = System.currentTimeMillis();
+        lastCycleEnd = endTime;
+        running = false;
+        try {
+            databaseClient.updateStatus("fetch.rest.end", endTime);
+            databaseClient.updateStatus("fetch.rest.duration", (endTime - startTime));
         } catch (Exception e) {
             Sentry.captureException(e);
-            log.log(Level.ERROR, "Exception in fetch #" + n, e);
+            log.error("Failed to update status", e);
         }
 
-        return c;
-    }
-
-    // From  https://github.com/SpiGetOrg/SpigetExistence/blob/master/src/main/java/org/spiget/existence/SpigetExistence.java#L201
-
-    void setResourceStatus(int id, int status) {
-        databaseClient.getResourcesCollection().updateOne(new Document("_id", id), new Document("$set", new Document("existenceStatus", status)));
-    }
-
-    void updateName(int id, String name) {
-        databaseClient.getResourcesCollection().updateOne(new Document("_id", id), new Document("$set", new Document("name", name).append("fetch.restLatest", System.currentTimeMillis())));
-    }
-
-    void updateTag(int id, String tag) {
-        databaseClient.getResourcesCollection().updateOne(new Document("_id", id), new Document("$set", new Document("tag", tag).append("fetch.restLatest", System.currentTimeMillis())));
-    }
-
-    void updateDownloads(int id, int downloads) {
-        databaseClient.getResourcesCollection().updateOne(new Document("_id", id), new Document("$set", new Document("downloads", downloads).append("fetch.restLatest", System.currentTimeMillis())));
-    }
-
-    void updateRatingCount(int id, int count) {
-        databaseClient.getResourcesCollection().updateOne(new Document("_id", id), new Document("$set", new Document("rating.count", count).append("fetch.restLatest", System.currentTimeMillis())));
-    }
+        try {
+            metrics.metrics.getInflux().write(Point
+                    .measurement("rest_fetch_duration")
+                    .addField("duration", (endTime - startTime))
+                    .build());
+        } catch (Exception e) {
+            Sentry.captureException(e);
+        }
 
-    void updateRatingAvg(int id, float rating) {
-        databaseClient.getResourcesCollection().updateOne(new Document("_id", id), new Document("$set", new Document("rating.average", rating).append("fetch.restLatest", System.currentTimeMillis())));
+        log.info("Finished. Took {} minutes total.", ((double) endTime - startTime) / 1000.0 / 60.0);
     }
 
-    void updatePrice(int id, double price, String currency) {
-        databaseClient.getResourcesCollection().updateOne(new Document("_id", id),
-                new Document("$set", new Document("premium", true)
-                        .append("price", price)
-                        .append("currency", currency)
-                        .append("fetch.restLatest", System.currentTimeMillis())));
-    }
+    /**
+     * Keeps fetching in cycles, reusing connections and caches, until the process is stopped.
+     * Each cycle picks up everything that became due since the last one.
+     */
+    public void runDaemon() {
+        long interval = config.getLong("daemon.interval", 300000);
 
-    void addVersionUuid(int resource, int author, String versionName, int updateCount, Date date) {
-        UUID uuid = ResourceVersion.makeUuid(resource, author, versionName, updateCount, date);
-        databaseClient.getResourceVersionsCollection().updateOne(new Document("resource", resource).append("name", versionName),
-                new Document("$set", new Document("uuid", uuid.toString())));
-    }
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                fetch();
+            } catch (Exception e) {
+                Sentry.captureException(e);
+                log.log(Level.ERROR, "Fetch cycle failed", e);
+            } finally {
+                running = false;
+            }
 
-    void updateUserName(int id, String name) {
-        databaseClient.getAuthorsCollection().updateOne(new Document("_id", id), new Document("$set", new Document("name", name).append("fetch.restLatest", System.currentTimeMillis())));
+            log.info("Next cycle in {}s", interval / 1000);
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        shutdown();
     }
 
-    void updateIdentities(int id, Map<String, Object> identities) {
-        databaseClient.getAuthorsCollection().updateOne(new Document("_id", id), new Document("$set", new Document("identities", new Document(identities)).append("fetch.restLatest", System.currentTimeMillis())));
+    public void shutdown() {
+        startup.shutdownNow();
+        streamExecutor.shutdown();
+        workers.shutdown();
+        if (statusServer != null) {
+            statusServer.stop();
+        }
     }
 
-    void updateAvatar(int id, String info, String hash) {
-        databaseClient.getAuthorsCollection().updateOne(new Document("_id", id), new Document("$set", new Document("icon.info", info).append("icon.hash", hash).append("fetch.restLatest", System.currentTimeMillis())));
+    void startStatusServer(int port) throws IOException {
+        long maxAge = config.getLong("health.maxAge", 6 * 3600000);
+
+        statusServer = new StatusServer(port);
+        statusServer.handle("/health", "application/json", () -> {
+            Document health = new Document("node", leases.getNode())
+                    .append("running", running)
+                    .append("lastCycleEnd", lastCycleEnd)
+                    .append("progress", progress.toDocument());
+            for (CheckStream<?, ?> stream : streams) {
+                health.append(stream.getType(), stream.toDocument());
+            }
+            // healthy while a cycle is running or the last one finished recently enough
+            boolean healthy = running || System.currentTimeMillis() - lastCycleEnd < maxAge;
+            return new StatusServer.Response(healthy ? 200 : 503, health.toJson());
+        });
+        statusServer.handle("/metrics", "text/plain; version=0.0.4", () -> new StatusServer.Response(200, pipeline.toPrometheus(progress)));
+        statusServer.start();
     }
 
-    void updateAvatar(int id, String url) {
-        databaseClient.getAuthorsCollection().updateOne(new Document("_id", id), new Document("$set", new Document("icon.url", url).append("fetch.restLatest", System.currentTimeMillis())));
+    /**
+     * Counts how a payload compared to the database by digest: <code>unchanged</code> (DB matches upstream),
+     * <code>dbMismatch</code> (upstream is the same as last time, but the DB differs) or <code>changed</code> (upstream changed)
+     */
+    void countDigest(String type, String result) {
+        try {
+            DIGEST_METRIC
+                    .tag("type", type)
+                    .tag("result", result)
+                    .inc();
+        } catch (Exception e) {
+            Sentry.captureException(e);
+        }
     }
 
-    void deleteAuthor(int id) {
-        databaseClient.getAuthorsCollection().updateOne(new Document("_id", id), new Document("$set", new Document("shouldDelete", true)));
-    }
+    // From  https://github.com/SpiGetOrg/SpigetExistence/blob/master/src/main/java/org/spiget/existence/SpigetExistence.java#L201
 
-    void setResourceUpdateTimestamp(int id) {
-        databaseClient.getResourcesCollection().updateOne(new Document("_id", id), new Document("$set", new Document("fetch.restLatest", System.currentTimeMillis())));
+    /**
+     * Writes the compared fields, or only bumps <code>fetch.restLatest</code> if nothing changed
+     */
+    void applyChanges(String entity, MongoCollection<Document> collection, int id, Changes changes) {
+        Document set = new Document(changes.getSet());
+        set.append("fetch.restLatest", System.currentTimeMillis());
+        writes.set(collection, id, set);
+        for (Changes.Change change : changes.getChanges()) {
+            pipeline.countChange(entity, change.field.startsWith("identities.") ? "identities" : change.field);
+        }
     }
 
-    void setAuthorUpdateTimestamp(int id) {
-        databaseClient.getAuthorsCollection().updateOne(new Document("_id", id), new Document("$set", new Document("fetch.restLatest", System.currentTimeMillis())));
+    void scheduleNextCheck(ResourceSnapshot resource, ChangeScheduler.Activity activity) {
+        long interval = scheduler.nextInterval(resource.getRestInterval(), activity);
+        writes.set(databaseClient.getResourcesCollection(), resource.getId(), new Document("fetch.restInterval", interval).append("fetch.restDue", System.currentTimeMillis() + interval));
     }
 
-    void requestUpdate(int id) {
-        requestUpdate(id, "resource", false);
+    void scheduleNextCheck(AuthorSnapshot author) {
+        writes.set(databaseClient.getAuthorsCollection(), author.getId(), new Document("fetch.restDue", System.currentTimeMillis() + authorInterval));
     }
 
     void requestUpdate(int id, String type, boolean shouldDelete) {
@@ -584,10 +604,9 @@ public class SpigetRestFetcher {
         request.setUpdates(updates);
         request.setReviews(reviews);
         request.setRequestedId(id);
-        request.setRequested(System.currentTimeMillis());
+        request.setRequested(startTime);
 
-        Document document = DatabaseParser.toDocument(SpigetGson.UPDATE_REQUEST.toJsonTree(request));
-        databaseClient.getUpdateRequestsCollection().insertOne(document);
+        updateRequests.request(request, startTime);
     }
 
 }
@@ -0,0 +1,98 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Client for the SpigotMC simple API, see https://github.com/SpigotMC/XenforoResourceManagerAPI
+ */
+public interface SpigotApiClient {
+
+    String DEFAULT_BASE_URL = "https://api.spigotmc.org/simple/0.2/index.php";
+
+    CompletableFuture<Response> getResource(int id);
+
+    CompletableFuture<Response> getAuthor(int id);
+
+    /**
+     * @param category category id, or <code>null</code> for all categories
+     * @param page     page, starting at 1
+     * @return array of resources in the same format as {@link #getResource(int)}
+     */
+    CompletableFuture<Response> listResources(Integer category, int page);
+
+    /**
+     * Release anything held open, e.g. a recording
+     */
+    default void close() {
+    }
+
+    static String listQuery(Integer category, int page) {
+        return "action=listResources" + (category != null ? "&category=" + category : "") + "&page=" + page;
+    }
+
+    class Response {
+
+        public final int code;
+        /**
+         * Parsed body, for clients that only get a tree. Only set for successful responses.
+         */
+        public final JsonElement json;
+        /**
+         * Raw UTF-8 body, received in full, for clients that leave parsing to the checks. Only set for successful
+         * responses.
+         */
+        public final byte[] body;
+
+        /**
+         * Response without a body, e.g. an error
+         */
+        public Response(int code) {
+            this(code, (byte[]) null);
+        }
+
+        public Response(int code, JsonElement json) {
+            this.code = code;
+            this.json = json;
+            this.body = null;
+        }
+
+        public Response(int code, byte[] body) {
+            this.code = code;
+            this.json = null;
+            this.body = body;
+        }
+
+        public boolean hasBody() {
+            return body != null || json != null;
+        }
+
+        /**
+         * @return pull parser over the buffered body, decoding it without a String copy or a tree, or over the
+         * serialized tree if the client parsed it
+         */
+        public JsonReader reader() {
+            if (body != null) {
+                return new JsonReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+            }
+            return new JsonReader(new StringReader(String.valueOf(json)));
+        }
+
+        /**
+         * @return the body as a tree, parsed on each call if the client didn't parse it
+         */
+        public JsonElement getJson() {
+            if (json != null || body == null) {return json;}
+            return new JsonParser().parse(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+        }
+
+    }
+
+}
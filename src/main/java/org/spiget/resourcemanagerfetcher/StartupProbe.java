@@ -0,0 +1,48 @@
+package org.spiget.resourcemanagerfetcher;
+
+import io.sentry.Sentry;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a startup step in the background and retries it with exponential backoff, so one flaky connection attempt
+ * doesn't end the run.
+ */
+@Log4j2
+public class StartupProbe {
+
+    /**
+     * @param attempts  attempts before giving up
+     * @param baseDelay delay before the first retry in milliseconds, doubled for every further one up to maxDelay
+     * @return the step's result, or the last failure once all attempts failed
+     */
+    public static <T> CompletableFuture<T> retry(String name, Callable<T> step, int attempts, long baseDelay, long maxDelay, ScheduledExecutorService scheduler) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long start = System.currentTimeMillis();
+        scheduler.execute(() -> attempt(name, step, 1, attempts, baseDelay, maxDelay, scheduler, start, result));
+        return result;
+    }
+
+    static <T> void attempt(String name, Callable<T> step, int attempt, int attempts, long baseDelay, long maxDelay, ScheduledExecutorService scheduler, long start, CompletableFuture<T> result) {
+        try {
+            T value = step.call();
+            log.info("{} successful ({}ms, attempt {})", name, System.currentTimeMillis() - start, attempt);
+            result.complete(value);
+        } catch (Exception e) {
+            if (attempt >= attempts) {
+                Sentry.captureException(e);
+                log.error("{} failed {} times after {}ms", name, attempt, System.currentTimeMillis() - start, e);
+                result.completeExceptionally(e);
+                return;
+            }
+            long delay = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, 20));
+            log.warn("{} failed (attempt {}/{}), retrying in {}ms: {}", name, attempt, attempts, delay, e.toString());
+            scheduler.schedule(() -> attempt(name, step, attempt + 1, attempts, baseDelay, maxDelay, scheduler, start, result), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+}
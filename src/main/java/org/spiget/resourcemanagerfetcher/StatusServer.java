@@ -0,0 +1,78 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.sentry.Sentry;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Small HTTP server for health checks and scraping, running on its own thread.
+ */
+@Log4j2
+public class StatusServer {
+
+    private final HttpServer server;
+
+    public StatusServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "status-server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Serve the supplied response on the given path
+     */
+    public void handle(String path, String contentType, Supplier<Response> handler) {
+        server.createContext(path, exchange -> {
+            try {
+                Response response = handler.get();
+                send(exchange, response.code, contentType, response.body);
+            } catch (Exception e) {
+                Sentry.captureException(e);
+                log.warn("Failed to handle {}", path, e);
+                send(exchange, 500, "text/plain", e.toString());
+            }
+        });
+    }
+
+    static void send(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public void start() {
+        server.start();
+        log.info("Status server listening on {}", server.getAddress());
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public static class Response {
+
+        final int code;
+        final String body;
+
+        public Response(int code, String body) {
+            this.code = code;
+            this.body = body;
+        }
+
+    }
+
+}
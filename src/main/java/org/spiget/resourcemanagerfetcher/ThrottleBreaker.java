@@ -0,0 +1,76 @@
+package org.spiget.resourcemanagerfetcher;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Adjusts the shared {@link RateLimiter} to the ratio of throttled (Cloudflare 503) responses.
+ * <p>
+ * Every {@link #window} responses the ratio is evaluated: above {@link #tripRatio} the rate is halved (down to
+ * {@link #minFactor} of the configured rate), below {@link #recoverRatio} it is raised again by a quarter until the
+ * configured rate is reached.
+ */
+@Log4j2
+public class ThrottleBreaker {
+
+    public enum State {
+        CLOSED,
+        THROTTLED
+    }
+
+    private final RateLimiter rateLimiter;
+    private final double baseRate;
+    private final int window;
+    private final double tripRatio;
+    private final double recoverRatio;
+    private final double minFactor;
+
+    private int samples;
+    private int throttled;
+    private double factor = 1;
+    private double lastRatio;
+
+    public ThrottleBreaker(RateLimiter rateLimiter, double baseRate, int window, double tripRatio, double recoverRatio, double minFactor) {
+        this.rateLimiter = rateLimiter;
+        this.baseRate = baseRate;
+        this.window = window;
+        this.tripRatio = tripRatio;
+        this.recoverRatio = recoverRatio;
+        this.minFactor = minFactor;
+    }
+
+    public synchronized void record(boolean wasThrottled) {
+        samples++;
+        if (wasThrottled) {
+            throttled++;
+        }
+        if (samples < window) {return;}
+
+        lastRatio = (double) throttled / samples;
+        samples = 0;
+        throttled = 0;
+
+        double previous = factor;
+        if (lastRatio > tripRatio) {
+            factor = Math.max(minFactor, factor / 2);
+        } else if (lastRatio < recoverRatio) {
+            factor = Math.min(1, factor * 1.25);
+        }
+        if (factor != previous) {
+            rateLimiter.setRate(baseRate * factor);
+            log.warn("Throttled ratio {}, request rate now {}/s", lastRatio, baseRate * factor);
+        }
+    }
+
+    public synchronized State getState() {
+        return factor < 1 ? State.THROTTLED : State.CLOSED;
+    }
+
+    public synchronized double getFactor() {
+        return factor;
+    }
+
+    public synchronized double getLastRatio() {
+        return lastRatio;
+    }
+
+}
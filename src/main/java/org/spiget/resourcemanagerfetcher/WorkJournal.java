@@ -0,0 +1,287 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.mongodb.client.MongoCollection;
+import io.sentry.Sentry;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.Level;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only local log of the current cycle, so a crashed run resumes exactly where it stopped.
+ * <p>
+ * Records, one per line:
+ * <ul>
+ * <li><code>B &lt;cycleStart&gt;</code> a cycle began</li>
+ * <li><code>D &lt;type&gt; &lt;id&gt;</code> an item was checked</li>
+ * <li><code>S &lt;collection&gt; &lt;id&gt; &lt;fields&gt;</code> / <code>U &lt;collection&gt; &lt;{filter, update}&gt;</code> a <code>$set</code> / upsert was queued</li>
+ * <li><code>M &lt;seq&gt;</code> the queued mutations were taken for a flush, <code>F &lt;seq&gt;</code> that flush succeeded</li>
+ * <li><code>E</code> the cycle ended</li>
+ * </ul>
+ * The file is flushed and fsynced in batches every sync interval, so a crash loses at most that much. On startup,
+ * mutations whose flush didn't succeed are queued again and checked items of an unfinished cycle are skipped.
+ */
+@Log4j2
+public class WorkJournal {
+
+    private static final JsonWriterSettings JSON = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+    private final File file;
+    private final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "journal-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private FileOutputStream stream;
+    private Writer writer;
+    private long markSeq;
+
+    private long cycleStart;
+    private final Map<String, IntLongMap> done = new HashMap<>();
+    private final List<String[]> pending = new ArrayList<>();
+
+    public WorkJournal(File file, long syncIntervalMillis) {
+        this.file = file;
+        this.syncer.scheduleWithFixedDelay(this::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads what the previous run left behind and starts a compacted journal with only the unfinished cycle's state.
+     * The unwritten mutations are only kept in memory from here on, so {@link #requeue(WriteBatcher, Map)} them right away.
+     */
+    public synchronized void open() throws IOException {
+        if (file.exists()) {
+            replay();
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            if (cycleStart != 0) {
+                out.write("B " + cycleStart + "\n");
+                for (Map.Entry<String, IntLongMap> entry : done.entrySet()) {
+                    for (int id : entry.getValue().keys()) {
+                        out.write("D " + entry.getKey() + " " + id + "\n");
+                    }
+                }
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        stream = new FileOutputStream(file, true);
+        writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+    }
+
+    void replay() throws IOException {
+        List<String[]> ops = new ArrayList<>();
+        List<Integer> opBatches = new ArrayList<>();
+        Map<Long, Integer> marks = new HashMap<>();
+        Set<Integer> flushed = new HashSet<>();
+        int batch = 0;// ops belong to the flush of the next mark
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) {continue;}
+                try {
+                    switch (line.charAt(0)) {
+                        case 'B':
+                            cycleStart = Long.parseLong(line.substring(2));
+                            done.clear();
+                            break;
+                        case 'E':
+                            cycleStart = 0;
+                            done.clear();
+                            break;
+                        case 'D': {
+                            String[] parts = line.split(" ", 3);
+                            done.computeIfAbsent(parts[1], t -> new IntLongMap(1024)).put(Integer.parseInt(parts[2]), 1);
+                            break;
+                        }
+                        case 'S':
+                            ops.add(line.split(" ", 4));
+                            opBatches.add(batch);
+                            break;
+                        case 'U':
+                            ops.add(line.split(" ", 3));
+                            opBatches.add(batch);
+                            break;
+                        case 'M':
+                            marks.put(Long.parseLong(line.substring(2)), batch++);
+                            break;
+                        case 'F':
+                            Integer marked = marks.get(Long.parseLong(line.substring(2)));
+                            if (marked != null) {
+                                flushed.add(marked);
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                } catch (RuntimeException e) {// torn last line after a crash
+                    log.log(Level.WARN, "Skipping unreadable journal line", e);
+                }
+            }
+        }
+        for (int i = 0; i < ops.size(); i++) {
+            if (!flushed.contains(opBatches.get(i))) {
+                pending.add(ops.get(i));
+            }
+        }
+        int doneCount = 0;
+        for (IntLongMap ids : done.values()) {
+            doneCount += ids.size();
+        }
+        if (cycleStart != 0) {
+            log.info("Replayed journal: unfinished cycle from {} with {} checked items, {} unwritten mutations", cycleStart, doneCount, pending.size());
+        } else {
+            log.info("Replayed journal: no open cycle, {} unwritten mutations", pending.size());
+        }
+    }
+
+    /**
+     * Queues the mutations that weren't written before the previous run stopped
+     *
+     * @param collections collections by name
+     * @return number of mutations queued
+     */
+    public int requeue(WriteBatcher writes, Map<String, MongoCollection<Document>> collections) {
+        List<String[]> ops;
+        synchronized (this) {
+            ops = new ArrayList<>(pending);
+            pending.clear();
+        }
+        int count = 0;
+        for (String[] op : ops) {
+            MongoCollection<Document> collection = collections.get(op[1]);
+            if (collection == null) {
+                log.warn("Dropping journaled mutation for unknown collection {}", op[1]);
+                continue;
+            }
+            if ("S".equals(op[0])) {
+                writes.set(collection, Integer.parseInt(op[2]), Document.parse(op[3]));
+            } else {
+                Document upsert = Document.parse(op[2]);
+                writes.upsert(collection, (Document) upsert.get("filter"), (Document) upsert.get("update"));
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return start of the unfinished cycle to resume, or <code>0</code>
+     */
+    public synchronized long getCycleStart() {
+        return cycleStart;
+    }
+
+    public synchronized void begin(long cycleStart) {
+        if (this.cycleStart == cycleStart) {return;}// resuming
+        this.cycleStart = cycleStart;
+        done.clear();
+        append("B " + cycleStart);
+    }
+
+    /**
+     * Ends the cycle. Once everything is written the journal starts over empty, otherwise it's kept so the next start
+     * writes the rest.
+     *
+     * @param written whether every journaled mutation is written
+     */
+    public synchronized void end(boolean written) {
+        cycleStart = 0;
+        done.clear();
+        if (!written) {
+            log.warn("Keeping journal, not all mutations are written yet");
+            append("E");
+            return;
+        }
+        try {
+            writer.flush();
+            stream.getChannel().truncate(0);
+        } catch (IOException e) {
+            Sentry.captureException(e);
+            log.log(Level.WARN, "Failed to truncate journal", e);
+            append("E");
+        }
+    }
+
+    public synchronized boolean isDone(String type, int id) {
+        IntLongMap ids = done.get(type);
+        return ids != null && ids.get(id, 0) != 0;
+    }
+
+    public synchronized void done(String type, int id) {
+        done.computeIfAbsent(type, t -> new IntLongMap(1024)).put(id, 1);
+        append("D " + type + " " + id);
+    }
+
+    public synchronized void set(String collection, Object id, Document fields) {
+        append("S " + collection + " " + id + " " + fields.toJson(JSON));
+    }
+
+    public synchronized void upsert(String collection, Document filter, Document update) {
+        append("U " + collection + " " + new Document("filter", filter).append("update", update).toJson(JSON));
+    }
+
+    /**
+     * @return sequence number to pass to {@link #flushed(long)} once the mutations queued so far are written
+     */
+    public synchronized long mark() {
+        append("M " + ++markSeq);
+        return markSeq;
+    }
+
+    public synchronized void flushed(long seq) {
+        append("F " + seq);
+    }
+
+    void append(String line) {
+        if (writer == null) {return;}
+        try {
+            writer.write(line);
+            writer.write('\n');
+        } catch (IOException e) {
+            Sentry.captureException(e);
+            log.log(Level.WARN, "Failed to write journal", e);
+        }
+    }
+
+    public synchronized void sync() {
+        if (writer == null) {return;}
+        try {
+            writer.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            Sentry.captureException(e);
+            log.log(Level.WARN, "Failed to sync journal", e);
+        }
+    }
+
+    public synchronized void close() {
+        syncer.shutdown();
+        sync();
+        try {
+            if (writer != null) {
+                writer.close();
+            }
+        } catch (IOException e) {
+            Sentry.captureException(e);
+        }
+        writer = null;
+    }
+
+}
@@ -0,0 +1,273 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import io.sentry.Sentry;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.Level;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer for the fetcher's Mongo mutations.
+ * <p>
+ * All <code>$set</code> fields queued for the same document are merged into a single update, and pending updates and
+ * upserts are sent as unordered bulk writes per collection once {@link #batchSize} operations are queued or every
+ * flush interval, whichever comes first.
+ * <p>
+ * Batching never drops a mutation: whatever a bulk write fails to write is queued again, merged under anything queued
+ * for the same document since, and retried with exponential backoff starting at the flush interval.
+ * <p>
+ * With a {@link WorkJournal}, every queued mutation is journaled, so whatever wasn't written before a crash is written
+ * on the next start. Requeued mutations are journaled again with what they were merged with, so a failed batch can be
+ * marked as handled without replaying it over newer values.
+ */
+@Log4j2
+public class WriteBatcher {
+
+    private final PipelineMetrics pipeline;
+    private final WorkJournal journal;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final ScheduledExecutorService scheduler;
+
+    static final long MAX_RETRY_DELAY = 300000;
+
+    private final Object flushLock = new Object();
+
+    private Map<MongoCollection<Document>, Map<Object, Document>> pendingSets = new LinkedHashMap<>();
+    private Map<MongoCollection<Document>, List<WriteModel<Document>>> pendingUpserts = new LinkedHashMap<>();
+    private int pendingCount;
+    /**
+     * Flushes that failed in a row, and when the periodic flush may try again
+     */
+    private int failures;
+    private long retryAt;
+
+    /**
+     * @param journal journal to record queued mutations in, or <code>null</code>
+     */
+    public WriteBatcher(PipelineMetrics pipeline, WorkJournal journal, int batchSize, long flushIntervalMillis) {
+        this.pipeline = pipeline;
+        this.journal = journal;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "write-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queue <code>$set</code> of the given fields on the document with the given <code>_id</code>
+     */
+    public void set(MongoCollection<Document> collection, Object id, Document fields) {
+        boolean full;
+        synchronized (this) {
+            Document merged = pendingSets.computeIfAbsent(collection, c -> new LinkedHashMap<>()).get(id);
+            if (merged == null) {
+                pendingSets.get(collection).put(id, new Document(fields));
+                pendingCount++;
+            } else {
+                merged.putAll(fields);
+            }
+            if (journal != null) {
+                journal.set(collection.getNamespace().getCollectionName(), id, fields);
+            }
+            full = pendingCount >= batchSize;
+        }
+        if (full) {
+            scheduler.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Queue an update of the document matching the filter, inserting it if there is none
+     *
+     * @param update update operators, e.g. <code>$setOnInsert</code> to make an insert safe to repeat
+     */
+    public void upsert(MongoCollection<Document> collection, Document filter, Document update) {
+        boolean full;
+        synchronized (this) {
+            pendingUpserts.computeIfAbsent(collection, c -> new ArrayList<>()).add(new UpdateOneModel<>(filter, update, new UpdateOptions().upsert(true)));
+            pendingCount++;
+            if (journal != null) {
+                journal.upsert(collection.getNamespace().getCollectionName(), filter, update);
+            }
+            full = pendingCount >= batchSize;
+        }
+        if (full) {
+            scheduler.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Write everything queued so far, blocking until done. Does nothing while backing off after a failed write.
+     *
+     * @return <code>false</code> if anything queued is left unwritten, it's retried by the periodic flush
+     */
+    public boolean flush() {
+        return flush(false);
+    }
+
+    /**
+     * @param force write even while backing off
+     */
+    boolean flush(boolean force) {
+        synchronized (flushLock) {
+            Map<MongoCollection<Document>, Map<Object, Document>> sets;
+            Map<MongoCollection<Document>, List<WriteModel<Document>>> upserts;
+            long mark = 0;
+            synchronized (this) {
+                if (pendingCount == 0) {return true;}
+                if (!force && System.currentTimeMillis() < retryAt) {return false;}
+                sets = pendingSets;
+                upserts = pendingUpserts;
+                pendingSets = new LinkedHashMap<>();
+                pendingUpserts = new LinkedHashMap<>();
+                pendingCount = 0;
+                if (journal != null) {
+                    mark = journal.mark();
+                }
+            }
+            Map<MongoCollection<Document>, Map<Object, Document>> failedSets = new LinkedHashMap<>();
+            Map<MongoCollection<Document>, List<WriteModel<Document>>> failedUpserts = new LinkedHashMap<>();
+
+            for (Map.Entry<MongoCollection<Document>, Map<Object, Document>> entry : sets.entrySet()) {
+                List<Object> ids = new ArrayList<>(entry.getValue().keySet());
+                List<WriteModel<Document>> models = new ArrayList<>(ids.size());
+                for (Object id : ids) {
+                    models.add(new UpdateOneModel<>(new Document("_id", id), new Document("$set", entry.getValue().get(id))));
+                }
+                long start = System.nanoTime();
+                try {
+                    entry.getKey().bulkWrite(models, new BulkWriteOptions().ordered(false));
+                    pipeline.record(PipelineMetrics.Stage.DB_WRITE, start);
+                } catch (Exception e) {
+                    Sentry.captureException(e);
+                    log.error("Failed to write {} updates to {}", models.size(), entry.getKey().getNamespace(), e);
+                    Map<Object, Document> failed = new LinkedHashMap<>();
+                    for (int index : failedIndexes(e, models.size())) {
+                        failed.put(ids.get(index), entry.getValue().get(ids.get(index)));
+                    }
+                    failedSets.put(entry.getKey(), failed);
+                }
+            }
+            for (Map.Entry<MongoCollection<Document>, List<WriteModel<Document>>> entry : upserts.entrySet()) {
+                long start = System.nanoTime();
+                try {
+                    entry.getKey().bulkWrite(entry.getValue(), new BulkWriteOptions().ordered(false));
+                    pipeline.record(PipelineMetrics.Stage.DB_WRITE, start);
+                } catch (Exception e) {
+                    Sentry.captureException(e);
+                    log.error("Failed to upsert {} documents into {}", entry.getValue().size(), entry.getKey().getNamespace(), e);
+                    List<WriteModel<Document>> failed = new ArrayList<>();
+                    for (int index : failedIndexes(e, entry.getValue().size())) {
+                        failed.add(entry.getValue().get(index));
+                    }
+                    failedUpserts.put(entry.getKey(), failed);
+                }
+            }
+
+            boolean written = failedSets.isEmpty() && failedUpserts.isEmpty();
+            synchronized (this) {
+                if (written) {
+                    failures = 0;
+                    retryAt = 0;
+                } else {
+                    requeue(failedSets, failedUpserts);
+                }
+            }
+            if (journal != null) {// the failed ones were journaled again by the requeue
+                journal.flushed(mark);
+            }
+            return written;
+        }
+    }
+
+    /**
+     * @return indexes of the models a bulk write failed to write, all of them unless the server reported which
+     */
+    static List<Integer> failedIndexes(Exception e, int size) {
+        List<Integer> indexes = new ArrayList<>();
+        if (e instanceof MongoBulkWriteException && !((MongoBulkWriteException) e).getWriteErrors().isEmpty()) {
+            for (BulkWriteError error : ((MongoBulkWriteException) e).getWriteErrors()) {
+                indexes.add(error.getIndex());
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                indexes.add(i);
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Queues failed mutations again, under anything queued for the same documents while they were being written
+     */
+    private void requeue(Map<MongoCollection<Document>, Map<Object, Document>> sets, Map<MongoCollection<Document>, List<WriteModel<Document>>> upserts) {
+        for (Map.Entry<MongoCollection<Document>, Map<Object, Document>> entry : sets.entrySet()) {
+            Map<Object, Document> pending = pendingSets.computeIfAbsent(entry.getKey(), c -> new LinkedHashMap<>());
+            for (Map.Entry<Object, Document> failed : entry.getValue().entrySet()) {
+                Document newer = pending.get(failed.getKey());
+                if (newer == null) {
+                    pendingCount++;
+                } else {
+                    failed.getValue().putAll(newer);
+                }
+                pending.put(failed.getKey(), failed.getValue());
+                if (journal != null) {
+                    journal.set(entry.getKey().getNamespace().getCollectionName(), failed.getKey(), failed.getValue());
+                }
+            }
+        }
+        for (Map.Entry<MongoCollection<Document>, List<WriteModel<Document>>> entry : upserts.entrySet()) {
+            pendingUpserts.computeIfAbsent(entry.getKey(), c -> new ArrayList<>()).addAll(0, entry.getValue());
+            pendingCount += entry.getValue().size();
+            if (journal != null) {
+                for (WriteModel<Document> model : entry.getValue()) {
+                    UpdateOneModel<Document> upsert = (UpdateOneModel<Document>) model;
+                    journal.upsert(entry.getKey().getNamespace().getCollectionName(), (Document) upsert.getFilter(), (Document) upsert.getUpdate());
+                }
+            }
+        }
+        failures++;
+        long delay = Math.min(MAX_RETRY_DELAY, flushIntervalMillis << Math.min(failures - 1, 20));
+        retryAt = System.currentTimeMillis() + delay;
+        log.warn("Retrying {} unwritten mutations in {}ms", pendingCount, delay);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            Sentry.captureException(e);
+            log.log(Level.ERROR, "Failed to flush writes", e);
+        }
+    }
+
+    /**
+     * Stop the periodic flush and try once more to write whatever is left
+     *
+     * @return <code>false</code> if anything is left unwritten
+     */
+    public boolean close() {
+        scheduler.shutdown();
+        return flush(true);
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.stream.JsonReader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AuthorPayloadTest {
+
+    static AuthorPayload read(String json) throws IOException {
+        AuthorPayload payload = AuthorPayload.local();
+        assertTrue(payload.read(new JsonReader(new StringReader(json))));
+        return payload;
+    }
+
+    @Test
+    public void recordedPayload() throws IOException {
+        AuthorPayload payload = AuthorPayload.local();
+        try (JsonReader reader = new SpigotApiClient.Response(200, ResourcePayloadTest.recorded("author.json")).reader()) {
+            assertTrue(payload.read(reader));
+        }
+        assertEquals(162559, payload.getId());
+        assertEquals("mdcfe", payload.getUsername());
+        assertEquals(Arrays.asList("discord", "github", "twitter"), Arrays.asList(payload.getIdentities().keySet().toArray()));
+        assertEquals("md678685#0001", payload.getIdentities().get("discord"));
+        assertTrue(payload.isAvatarObject());
+        assertTrue(payload.hasAvatar());
+        assertEquals("1560000000", payload.getAvatarInfo());
+        assertEquals("9e3c81d1b0a2d61c5a6bd3b1d0d7c4a1", payload.getAvatarHash());
+        assertNull(payload.getAvatarUrl());
+    }
+
+    @Test
+    public void avatarUrl() throws IOException {
+        AuthorPayload payload = read("{\"id\":162559,\"avatar\":\"https://www.spigotmc.org/data/avatars/l/162/162559.jpg\"}");
+        assertEquals(162559, payload.getId());
+        assertFalse(payload.isAvatarObject());
+        assertTrue(payload.hasAvatar());
+        assertEquals("https://www.spigotmc.org/data/avatars/l/162/162559.jpg", payload.getAvatarUrl());
+        assertNull(payload.getAvatarHash());
+    }
+
+    @Test
+    public void noAvatar() throws IOException {
+        assertFalse(read("{\"id\":\"1\",\"avatar\":null}").hasAvatar());
+        assertFalse(read("{\"id\":\"1\"}").hasAvatar());
+    }
+
+    @Test
+    public void nullIdentitiesDropped() throws IOException {
+        AuthorPayload payload = read("{\"identities\":{\"github\":\"mdcfe\",\"twitter\":null,\"discord\":{}}}");
+        assertEquals(Collections.singletonMap("github", "mdcfe"), payload.getIdentities());
+    }
+
+    @Test
+    public void localHolderIsReset() throws IOException {
+        read(new String(ResourcePayloadTest.recorded("author.json"), StandardCharsets.UTF_8));
+        AuthorPayload payload = read("{\"id\":\"10\"}");
+        assertEquals(10, payload.getId());
+        assertNull(payload.getUsername());
+        assertTrue(payload.getIdentities().isEmpty());
+        assertFalse(payload.hasAvatar());
+        assertNull(payload.getAvatarInfo());
+        assertNull(payload.getAvatarHash());
+    }
+
+    @Test
+    public void notAnObject() throws IOException {
+        assertFalse(AuthorPayload.local().read(new JsonReader(new StringReader("\"162559\""))));
+    }
+
+}
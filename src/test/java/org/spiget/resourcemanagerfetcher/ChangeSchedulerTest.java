@@ -0,0 +1,124 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.bson.Document;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChangeSchedulerTest {
+
+    static final long HOUR = 3600000;
+
+    final ChangeScheduler scheduler = ChangeScheduler.fromConfig(shippedConfig());
+
+    /**
+     * @return the <code>config.json</code> that ships, so the tests cover the configuration <code>init()</code> uses
+     */
+    static FetcherConfig shippedConfig() {
+        try (Reader reader = new InputStreamReader(ChangeSchedulerTest.class.getResourceAsStream("/config.json"), StandardCharsets.UTF_8)) {
+            return new FetcherConfig(new JsonParser().parse(reader).getAsJsonObject());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    public void shippedIntervals() {
+        assertEquals(24 * HOUR, scheduler.getDefaultInterval());
+        assertEquals(Arrays.asList(12 * HOUR, 6 * HOUR), scheduler.replay(24 * HOUR, Collections.nCopies(2, ChangeScheduler.Activity.HOT)));
+        assertEquals(14 * 24 * HOUR, scheduler.nextInterval(10 * 24 * HOUR, ChangeScheduler.Activity.QUIET));
+    }
+
+    @Test
+    public void unscheduledStartsAtDefault() {
+        assertEquals(24 * HOUR, scheduler.nextInterval(0, ChangeScheduler.Activity.ACTIVE));
+        assertEquals(12 * HOUR, scheduler.nextInterval(0, ChangeScheduler.Activity.HOT));
+        assertEquals(48 * HOUR, scheduler.nextInterval(0, ChangeScheduler.Activity.QUIET));
+    }
+
+    @Test
+    public void transitions() {
+        assertEquals(Arrays.asList(48 * HOUR, 48 * HOUR, 24 * HOUR, 12 * HOUR, 24 * HOUR),
+                scheduler.replay(24 * HOUR, Arrays.asList(
+                        ChangeScheduler.Activity.QUIET,
+                        ChangeScheduler.Activity.ACTIVE,
+                        ChangeScheduler.Activity.HOT,
+                        ChangeScheduler.Activity.HOT,
+                        ChangeScheduler.Activity.QUIET)));
+    }
+
+    @Test
+    public void clampedToMin() {
+        assertEquals(Arrays.asList(12 * HOUR, 6 * HOUR, 6 * HOUR),
+                scheduler.replay(24 * HOUR, Collections.nCopies(3, ChangeScheduler.Activity.HOT)));
+        assertEquals(6 * HOUR, scheduler.nextInterval(HOUR, ChangeScheduler.Activity.ACTIVE));
+    }
+
+    @Test
+    public void clampedToMax() {
+        assertEquals(Arrays.asList(48 * HOUR, 96 * HOUR, 192 * HOUR, 336 * HOUR, 336 * HOUR),
+                scheduler.replay(24 * HOUR, Collections.nCopies(5, ChangeScheduler.Activity.QUIET)));
+        assertEquals(336 * HOUR, scheduler.nextInterval(1000 * HOUR, ChangeScheduler.Activity.ACTIVE));
+    }
+
+    @Test
+    public void nothingChangedIsQuiet() {
+        assertEquals(ChangeScheduler.Activity.QUIET, scheduler.classify(null));
+        assertEquals(ChangeScheduler.Activity.QUIET, scheduler.classify(new Changes()));
+    }
+
+    @Test
+    public void updateRequestIsHot() {
+        Changes changes = downloads(100, 200);
+        changes.requestUpdate("version");
+        assertEquals(ChangeScheduler.Activity.HOT, scheduler.classify(changes));
+    }
+
+    @Test
+    public void downloadsBelowThresholdAreQuiet() {
+        assertEquals(ChangeScheduler.Activity.QUIET, scheduler.classify(downloads(100, 109)));
+    }
+
+    @Test
+    public void downloadsAtThresholdAreActive() {
+        assertEquals(ChangeScheduler.Activity.ACTIVE, scheduler.classify(downloads(100, 110)));
+        assertEquals(ChangeScheduler.Activity.ACTIVE, scheduler.classify(downloads(110, 100)));
+    }
+
+    @Test
+    public void otherChangesAreActive() {
+        Changes changes = downloads(100, 101);
+        changes.change("name", "Old", "New", new Document("name", "New"));
+        assertEquals(ChangeScheduler.Activity.ACTIVE, scheduler.classify(changes));
+    }
+
+    @Test
+    public void thresholdOfOneCountsEveryDownload() {
+        JsonObject json = shippedConfig().getJson().deepCopy();
+        json.addProperty("schedule.activeDownloads", 1);
+        ChangeScheduler scheduler = ChangeScheduler.fromConfig(new FetcherConfig(json));
+        assertEquals(ChangeScheduler.Activity.ACTIVE, scheduler.classify(downloads(100, 101)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnorderedIntervals() {
+        new ChangeScheduler(24 * HOUR, 6 * HOUR, 14 * 24 * HOUR, 10);
+    }
+
+    static Changes downloads(int oldValue, int newValue) {
+        Changes changes = new Changes();
+        changes.change("downloads", oldValue, newValue, new Document("downloads", newValue));
+        return changes;
+    }
+
+}
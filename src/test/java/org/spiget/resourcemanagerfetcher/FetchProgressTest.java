@@ -0,0 +1,30 @@
+package org.spiget.resourcemanagerfetcher;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FetchProgressTest {
+
+    @Test
+    public void publishesLegacyKeysAlongsideProgress() {
+        MemoryDatabase database = new MemoryDatabase();
+        FetchProgress progress = new FetchProgress(new PipelineMetrics());
+        progress.start(10, 500);
+        progress.setType("author");
+        progress.setPage(3);
+        progress.setItem(7);
+        progress.itemProcessed();
+        progress.publish(database);
+
+        Document document = (Document) database.statusValues.get("fetch.rest.progress");
+        assertEquals(1L, document.get("processed"));
+        assertEquals(10L, document.get("total"));
+        assertEquals("author", database.statusValues.get("fetch.rest.type"));
+        assertEquals(3, database.statusValues.get("fetch.rest.num"));
+        assertEquals(7, database.statusValues.get("fetch.rest.item"));
+        assertEquals(500, database.statusValues.get("fetch.rest.item.max"));
+    }
+
+}
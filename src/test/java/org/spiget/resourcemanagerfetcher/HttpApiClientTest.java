@@ -0,0 +1,101 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.stream.JsonReader;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class HttpApiClientTest {
+
+    HttpServer server;
+    ExecutorService serverThreads;
+    ExecutorService workers;
+    HttpApiClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            byte[] body = ("{\"id\":\"" + query.substring(query.lastIndexOf('=') + 1) + "\"}").getBytes(StandardCharsets.UTF_8);
+            int code = query.endsWith("id=404") ? 404 : 200;
+            if (code == 200 && query.contains("getAuthor")) {
+                ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+                try (OutputStream out = new GZIPOutputStream(gzipped)) {
+                    out.write(body);
+                }
+                body = gzipped.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(code, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        serverThreads = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverThreads);
+        server.start();
+        workers = Executors.newFixedThreadPool(1);
+        client = new HttpApiClient("http://127.0.0.1:" + server.getAddress().getPort() + "/", "test", Duration.ofSeconds(5), workers, new PipelineMetrics());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    @Test
+    public void plainAndGzippedBodies() throws Exception {
+        assertEquals(9089, ResourcePayload.intValue(reader(client.getResource(9089).get(5, TimeUnit.SECONDS))));
+        assertEquals(162559, ResourcePayload.intValue(reader(client.getAuthor(162559).get(5, TimeUnit.SECONDS))));
+    }
+
+    @Test
+    public void errorHasNoBody() throws Exception {
+        SpigotApiClient.Response response = client.getResource(404).get(5, TimeUnit.SECONDS);
+        assertEquals(404, response.code);
+        assertFalse(response.hasBody());
+        assertNull(response.body);
+    }
+
+    @Test
+    public void singleWorkerDoesNotStarve() throws Exception {
+        List<CompletableFuture<SpigotApiClient.Response>> responses = new ArrayList<>();
+        for (int i = 1; i <= 32; i++) {
+            responses.add(client.getResource(i));
+        }
+        CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        for (CompletableFuture<SpigotApiClient.Response> response : responses) {
+            assertEquals(200, response.join().code);
+        }
+    }
+
+    static JsonReader reader(SpigotApiClient.Response response) throws IOException {
+        JsonReader reader = response.reader();
+        reader.beginObject();
+        assertEquals("id", reader.nextName());
+        return reader;
+    }
+
+}
@@ -0,0 +1,512 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoException;
+import com.mongodb.MongoNamespace;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.conversions.Bson;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * In-memory stand-in for a {@link MongoCollection} of documents, so tests don't need a MongoDB server.
+ * <p>
+ * Implements the operations and operators the fetcher uses: <code>find</code> with sort and limit,
+ * <code>countDocuments</code>, <code>findOneAndUpdate</code>, <code>updateOne</code>, <code>bulkWrite</code> of
+ * update models, <code>insertMany</code> and <code>createIndex</code>; filters with <code>$and</code>,
+ * <code>$or</code>, comparisons, <code>$exists</code>, <code>$in</code> and <code>$mod</code>; updates with
+ * <code>$set</code>, <code>$unset</code>, <code>$setOnInsert</code>, <code>$max</code> and <code>$inc</code>.
+ * Anything else throws {@link UnsupportedOperationException}. Projections are ignored.
+ * <p>
+ * {@link #failWrites} makes the next bulk writes fail as if the server was unreachable.
+ */
+public class MemoryCollection implements InvocationHandler {
+
+    static final DocumentCodec CODEC = new DocumentCodec();
+
+    /**
+     * By <code>_id</code>, in insertion order
+     */
+    final Map<Object, Document> documents = new LinkedHashMap<>();
+    final MongoNamespace namespace;
+    /**
+     * Bulk writes left to fail without writing anything
+     */
+    int failWrites;
+
+    MemoryCollection(String name) {
+        this.namespace = new MongoNamespace("test", name);
+    }
+
+    public static MongoCollection<Document> create() {
+        return create("test");
+    }
+
+    @SuppressWarnings("unchecked")
+    public static MongoCollection<Document> create(String name) {
+        return (MongoCollection<Document>) Proxy.newProxyInstance(MemoryCollection.class.getClassLoader(), new Class<?>[] {MongoCollection.class}, new MemoryCollection(name));
+    }
+
+    /**
+     * @return the handler behind a collection from {@link #create()}
+     */
+    public static MemoryCollection of(MongoCollection<Document> collection) {
+        return (MemoryCollection) Proxy.getInvocationHandler(collection);
+    }
+
+    public synchronized Document get(Object id) {
+        return documents.get(id);
+    }
+
+    public synchronized void put(Document document) {
+        documents.put(document.get("_id"), document);
+    }
+
+    @Override
+    public synchronized Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "find":
+                return new Find(args == null ? new Document() : (Bson) args[0]).proxy();
+            case "countDocuments":
+                return (long) matching(args == null ? new Document() : (Bson) args[0]).size();
+            case "findOneAndUpdate":
+                return findOneAndUpdate((Bson) args[0], (Bson) args[1], args.length > 2 ? (FindOneAndUpdateOptions) args[2] : new FindOneAndUpdateOptions());
+            case "updateOne":
+                return updateOne((Bson) args[0], (Bson) args[1], args.length > 2 ? (UpdateOptions) args[2] : new UpdateOptions());
+            case "bulkWrite":
+                return bulkWrite((List<?>) args[0]);
+            case "insertMany":
+                return insertMany((List<?>) args[0]);
+            case "createIndex":
+                return "index";
+            case "getNamespace":
+                return namespace;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return namespace.getFullName();
+            default:
+                throw new UnsupportedOperationException(method.toString());
+        }
+    }
+
+    Document findOneAndUpdate(Bson filter, Bson update, FindOneAndUpdateOptions options) {
+        List<Document> matching = matching(filter);
+        if (matching.isEmpty()) {
+            if (!options.isUpsert()) {return null;}
+            Document inserted = upsert(filter, update);
+            return options.getReturnDocument() == ReturnDocument.AFTER ? copy(inserted) : null;
+        }
+        Document document = matching.get(0);
+        Document before = copy(document);
+        apply(document, toDocument(update), false);
+        return options.getReturnDocument() == ReturnDocument.AFTER ? copy(document) : before;
+    }
+
+    UpdateResult updateOne(Bson filter, Bson update, UpdateOptions options) {
+        List<Document> matching = matching(filter);
+        if (matching.isEmpty()) {
+            if (!options.isUpsert()) {return UpdateResult.acknowledged(0, 0L, null);}
+            upsert(filter, update);
+            return UpdateResult.acknowledged(0, 0L, null);
+        }
+        Document document = matching.get(0);
+        Document before = copy(document);
+        apply(document, toDocument(update), false);
+        return UpdateResult.acknowledged(1, before.equals(document) ? 0L : 1L, null);
+    }
+
+    Object bulkWrite(List<?> models) {
+        if (failWrites > 0) {
+            failWrites--;
+            throw new MongoException("Timed out waiting for a server");
+        }
+        int matched = 0;
+        int modified = 0;
+        for (Object model : models) {
+            if (!(model instanceof UpdateOneModel)) {
+                throw new UnsupportedOperationException(model.getClass().getName());
+            }
+            UpdateOneModel<?> update = (UpdateOneModel<?>) model;
+            UpdateResult result = updateOne(update.getFilter(), (Bson) update.getUpdate(), update.getOptions());
+            matched += (int) result.getMatchedCount();
+            modified += (int) result.getModifiedCount();
+        }
+        return BulkWriteResult.acknowledged(0, matched, 0, modified, Collections.emptyList());
+    }
+
+    Object insertMany(List<?> inserted) {
+        for (Object document : inserted) {
+            insert(copy((Document) document));
+        }
+        return null;
+    }
+
+    Document upsert(Bson filter, Bson update) {
+        Document document = new Document();
+        equalities(toDocument(filter), document);
+        apply(document, toDocument(update), true);
+        insert(document);
+        return document;
+    }
+
+    void insert(Document document) {
+        if (document.get("_id") == null) {
+            throw new UnsupportedOperationException("documents need an _id");
+        }
+        if (documents.containsKey(document.get("_id"))) {
+            throw new MongoException(11000, "E11000 duplicate key error, _id: " + document.get("_id"));
+        }
+        documents.put(document.get("_id"), document);
+    }
+
+    /**
+     * Copies the plain <code>field: value</code> conditions of a filter into a new document, as an upsert does
+     */
+    static void equalities(Document filter, Document into) {
+        for (Map.Entry<String, Object> entry : filter.entrySet()) {
+            if ("$and".equals(entry.getKey())) {
+                for (Object condition : (List<?>) entry.getValue()) {
+                    equalities((Document) condition, into);
+                }
+            } else if (!entry.getKey().startsWith("$") && !isOperators(entry.getValue())) {
+                set(into, entry.getKey(), entry.getValue());
+            } else if (!entry.getKey().startsWith("$") && ((Document) entry.getValue()).containsKey("$eq")) {
+                set(into, entry.getKey(), ((Document) entry.getValue()).get("$eq"));
+            }
+        }
+    }
+
+    List<Document> matching(Bson filter) {
+        Document query = toDocument(filter);
+        List<Document> result = new ArrayList<>();
+        for (Document document : documents.values()) {
+            if (matches(document, query)) {
+                result.add(document);
+            }
+        }
+        return result;
+    }
+
+    static boolean matches(Document document, Document query) {
+        for (Map.Entry<String, Object> entry : query.entrySet()) {
+            if (!matches(document, entry.getKey(), entry.getValue())) {return false;}
+        }
+        return true;
+    }
+
+    static boolean matches(Document document, String key, Object condition) {
+        switch (key) {
+            case "$and":
+                for (Object part : (List<?>) condition) {
+                    if (!matches(document, (Document) part)) {return false;}
+                }
+                return true;
+            case "$or":
+                for (Object part : (List<?>) condition) {
+                    if (matches(document, (Document) part)) {return true;}
+                }
+                return false;
+            default:
+                if (key.startsWith("$")) {
+                    throw new UnsupportedOperationException(key);
+                }
+                boolean exists = exists(document, key);
+                Object value = get(document, key);
+                if (!isOperators(condition)) {
+                    return equal(value, condition);
+                }
+                for (Map.Entry<String, Object> operator : ((Document) condition).entrySet()) {
+                    if (!matches(exists, value, operator.getKey(), operator.getValue())) {return false;}
+                }
+                return true;
+        }
+    }
+
+    static boolean matches(boolean exists, Object value, String operator, Object operand) {
+        switch (operator) {
+            case "$eq":
+                return equal(value, operand);
+            case "$ne":
+                return !equal(value, operand);
+            case "$lt":
+                return comparable(value, operand) && compare(value, operand) < 0;
+            case "$lte":
+                return comparable(value, operand) && compare(value, operand) <= 0;
+            case "$gt":
+                return comparable(value, operand) && compare(value, operand) > 0;
+            case "$gte":
+                return comparable(value, operand) && compare(value, operand) >= 0;
+            case "$exists":
+                return exists == (Boolean) operand;
+            case "$in":
+                for (Object candidate : (List<?>) operand) {
+                    if (equal(value, candidate)) {return true;}
+                }
+                return false;
+            case "$mod":
+                List<?> mod = (List<?>) operand;
+                return value instanceof Number && ((Number) value).longValue() % ((Number) mod.get(0)).longValue() == ((Number) mod.get(1)).longValue();
+            default:
+                throw new UnsupportedOperationException(operator);
+        }
+    }
+
+    static boolean isOperators(Object condition) {
+        return condition instanceof Document && !((Document) condition).isEmpty() && ((Document) condition).keySet().iterator().next().startsWith("$");
+    }
+
+    /**
+     * Equality as in a query: <code>null</code> also matches missing fields, numbers compare by value
+     */
+    static boolean equal(Object value, Object operand) {
+        if (value instanceof Number && operand instanceof Number) {
+            return compare(value, operand) == 0;
+        }
+        return Objects.equals(value, operand);
+    }
+
+    static boolean comparable(Object value, Object operand) {
+        if (value == null || operand == null) {return false;}
+        return value instanceof Number && operand instanceof Number || value.getClass() == operand.getClass() && value instanceof Comparable;
+    }
+
+    /**
+     * Orders like a sort: missing and <code>null</code> first, numbers by value
+     */
+    @SuppressWarnings("unchecked")
+    static int compare(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (a.getClass() != b.getClass()) {
+            return a.getClass().getName().compareTo(b.getClass().getName());
+        }
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    static void apply(Document document, Document update, boolean insert) {
+        for (Map.Entry<String, Object> entry : update.entrySet()) {
+            Document fields = (Document) entry.getValue();
+            for (Map.Entry<String, Object> field : fields.entrySet()) {
+                switch (entry.getKey()) {
+                    case "$set":
+                        set(document, field.getKey(), field.getValue());
+                        break;
+                    case "$setOnInsert":
+                        if (insert) {
+                            set(document, field.getKey(), field.getValue());
+                        }
+                        break;
+                    case "$unset":
+                        unset(document, field.getKey());
+                        break;
+                    case "$max":
+                        Object current = get(document, field.getKey());
+                        if (current == null || compare(field.getValue(), current) > 0) {
+                            set(document, field.getKey(), field.getValue());
+                        }
+                        break;
+                    case "$inc":
+                        Number value = (Number) get(document, field.getKey());
+                        Number by = (Number) field.getValue();
+                        set(document, field.getKey(), value == null ? by : value instanceof Double || by instanceof Double
+                                ? (Object) (value.doubleValue() + by.doubleValue())
+                                : value instanceof Long || by instanceof Long ? (Object) (value.longValue() + by.longValue()) : (Object) (value.intValue() + by.intValue()));
+                        break;
+                    default:
+                        throw new UnsupportedOperationException(entry.getKey());
+                }
+            }
+        }
+    }
+
+    static Object get(Document document, String path) {
+        return KeysetCursor.value(document, path);
+    }
+
+    static boolean exists(Document document, String path) {
+        String[] keys = path.split("\\.");
+        Document parent = parent(document, keys, false);
+        return parent != null && parent.containsKey(keys[keys.length - 1]);
+    }
+
+    static void set(Document document, String path, Object value) {
+        String[] keys = path.split("\\.");
+        parent(document, keys, true).put(keys[keys.length - 1], value);
+    }
+
+    static void unset(Document document, String path) {
+        String[] keys = path.split("\\.");
+        Document parent = parent(document, keys, false);
+        if (parent != null) {
+            parent.remove(keys[keys.length - 1]);
+        }
+    }
+
+    static Document parent(Document document, String[] keys, boolean create) {
+        Document parent = document;
+        for (int i = 0; i < keys.length - 1; i++) {
+            Object child = parent.get(keys[i]);
+            if (!(child instanceof Document)) {
+                if (!create) {return null;}
+                child = new Document();
+                parent.put(keys[i], child);
+            }
+            parent = (Document) child;
+        }
+        return parent;
+    }
+
+    static Document toDocument(Bson bson) {
+        BsonDocument document = bson.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+        return CODEC.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+    }
+
+    static Document copy(Document document) {
+        return toDocument(document);
+    }
+
+    /**
+     * A <code>find</code>, evaluated when it's iterated
+     */
+    class Find implements InvocationHandler {
+
+        final Bson filter;
+        Bson sort;
+        int limit;
+
+        Find(Bson filter) {
+            this.filter = filter;
+        }
+
+        Object proxy() {
+            return Proxy.newProxyInstance(MemoryCollection.class.getClassLoader(), new Class<?>[] {com.mongodb.client.FindIterable.class}, this);
+        }
+
+        List<Document> results() {
+            List<Document> results = new ArrayList<>();
+            synchronized (MemoryCollection.this) {
+                for (Document document : matching(filter)) {
+                    results.add(copy(document));
+                }
+            }
+            if (sort != null) {
+                Document order = toDocument(sort);
+                Comparator<Document> comparator = (a, b) -> 0;
+                for (Map.Entry<String, Object> entry : order.entrySet()) {
+                    String field = entry.getKey();
+                    int direction = ((Number) entry.getValue()).intValue();
+                    comparator = comparator.thenComparing((a, b) -> direction * compare(get(a, field), get(b, field)));
+                }
+                results.sort(comparator);
+            }
+            return limit > 0 && results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "projection":
+                case "batchSize":
+                case "noCursorTimeout":
+                case "maxTime":
+                case "hint":
+                    return proxy;
+                case "sort":
+                    sort = (Bson) args[0];
+                    return proxy;
+                case "limit":
+                    limit = (Integer) args[0];
+                    return proxy;
+                case "first":
+                    List<Document> results = results();
+                    return results.isEmpty() ? null : results.get(0);
+                case "iterator":
+                case "cursor":
+                    return cursor(results().iterator());
+                case "into":
+                    @SuppressWarnings("unchecked")
+                    List<Document> target = (List<Document>) args[0];
+                    target.addAll(results());
+                    return target;
+                case "forEach":
+                    for (Document document : results()) {
+                        if (args[0] instanceof java.util.function.Consumer) {
+                            @SuppressWarnings("unchecked")
+                            java.util.function.Consumer<Document> consumer = (java.util.function.Consumer<Document>) args[0];
+                            consumer.accept(document);
+                        } else {
+                            @SuppressWarnings({"unchecked", "deprecation"})
+                            com.mongodb.Block<Document> block = (com.mongodb.Block<Document>) args[0];
+                            block.apply(document);
+                        }
+                    }
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "Find" + filter;
+                default:
+                    throw new UnsupportedOperationException(method.toString());
+            }
+        }
+
+    }
+
+    static Object cursor(Iterator<Document> iterator) {
+        return Proxy.newProxyInstance(MemoryCollection.class.getClassLoader(), new Class<?>[] {com.mongodb.client.MongoCursor.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hasNext":
+                    return iterator.hasNext();
+                case "next":
+                    return iterator.next();
+                case "tryNext":
+                    return iterator.hasNext() ? iterator.next() : null;
+                case "close":
+                case "remove":
+                    return null;
+                case "forEachRemaining":
+                    @SuppressWarnings("unchecked")
+                    java.util.function.Consumer<Document> consumer = (java.util.function.Consumer<Document>) args[0];
+                    iterator.forEachRemaining(consumer);
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(method.toString());
+            }
+        });
+    }
+
+}
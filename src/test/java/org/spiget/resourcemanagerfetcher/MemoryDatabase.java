@@ -0,0 +1,67 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.spiget.database.DatabaseClient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link DatabaseClient} backed by {@link MemoryCollection}s, never connected.
+ */
+public class MemoryDatabase extends DatabaseClient {
+
+    final MongoCollection<Document> resources = MemoryCollection.create("resources");
+    final MongoCollection<Document> authors = MemoryCollection.create("authors");
+    final MongoCollection<Document> resourceVersions = MemoryCollection.create("resource_versions");
+    final MongoCollection<Document> updateRequests = MemoryCollection.create("update_requests");
+    final MongoCollection<Document> status = MemoryCollection.create("status");
+
+    final Map<String, Object> statusValues = new ConcurrentHashMap<>();
+
+    public MemoryDatabase() {
+        super("mongodb://localhost", "test");
+    }
+
+    @Override
+    public MongoCollection<Document> getResourcesCollection() {
+        return resources;
+    }
+
+    @Override
+    public MongoCollection<Document> getAuthorsCollection() {
+        return authors;
+    }
+
+    @Override
+    public MongoCollection<Document> getResourceVersionsCollection() {
+        return resourceVersions;
+    }
+
+    @Override
+    public MongoCollection<Document> getUpdateRequestsCollection() {
+        return updateRequests;
+    }
+
+    @Override
+    public MongoCollection<Document> getStatusCollection() {
+        return status;
+    }
+
+    @Override
+    public void updateStatus(String key, Object value) {
+        if (value == null) {
+            statusValues.remove(key);
+        } else {
+            statusValues.put(key, value);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getStatus(String key, T def) {
+        return statusValues.containsKey(key) ? (T) statusValues.get(key) : def;
+    }
+
+}
@@ -0,0 +1,159 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Two nodes sharing one status collection. Leases are long enough that the scheduled heartbeats don't run during a
+ * test; expiry is simulated by editing the lease document.
+ */
+public class PartitionLeasesTest {
+
+    static final long TTL = 3600000;
+    static final long IDLE = 3600000;
+
+    MongoCollection<Document> status;
+    PartitionLeases a;
+    PartitionLeases b;
+
+    @Before
+    public void setUp() {
+        status = MemoryCollection.create();
+        a = new PartitionLeases(status, "a", 2, TTL, IDLE);
+        b = new PartitionLeases(status, "b", 2, TTL, IDLE);
+    }
+
+    @Test
+    public void nodesClaimDifferentPartitions() {
+        PartitionLeases.Partition first = a.claim(false);
+        PartitionLeases.Partition second = b.claim(false);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals(1, first.index + second.index);
+        assertFalse(first.isResume());
+        assertFalse(second.isResume());
+        assertEquals("a", owner(first.index));
+        assertEquals("b", owner(second.index));
+
+        assertNull(node("c").claim(false));
+    }
+
+    @Test
+    public void restartedNodeResumesItsLease() {
+        PartitionLeases.Partition before = a.claim(false);
+        b.claim(false);
+
+        PartitionLeases.Partition after = node("a").claim(false);
+        assertNotNull(after);
+        assertEquals(before.index, after.index);
+        assertTrue(after.isResume());
+    }
+
+    @Test
+    public void partitionFilterAndSuffix() {
+        PartitionLeases.Partition partition = a.claim(false);
+        assertEquals(".p" + partition.index, partition.suffix());
+        assertEquals(new Document("_id", new Document("$mod", Arrays.asList(2L, (long) partition.index))), MemoryCollection.toDocument(partition.filter()));
+    }
+
+    @Test
+    public void heartbeatExtendsLease() {
+        PartitionLeases.Partition partition = a.claim(false);
+        lease(partition.index).put("expires", 0L);
+        a.heartbeat(partition);
+        assertTrue(partition.isHeld());
+        assertTrue((Long) lease(partition.index).get("expires") > System.currentTimeMillis());
+    }
+
+    @Test
+    public void takeoverResumesAndLosesHeartbeat() {
+        PartitionLeases.Partition dead = a.claim(false);
+        b.release(b.claim(false), true);// b finished the other partition, which now idles
+
+        assertNull(b.claim(false));
+        lease(dead.index).put("expires", System.currentTimeMillis() - 1);// a stopped sending heartbeats
+        PartitionLeases.Partition taken = b.claim(false);
+        assertNotNull(taken);
+        assertEquals(dead.index, taken.index);
+        assertTrue("unfinished partition should be resumed", taken.isResume());
+        assertEquals("b", owner(taken.index));
+
+        a.heartbeat(dead);
+        assertFalse(dead.isHeld());
+        assertTrue(taken.isHeld());
+
+        a.release(dead, true);// a lost lease isn't released, b keeps it
+        assertEquals("b", owner(taken.index));
+        assertFalse((Boolean) lease(taken.index).get("finished"));
+    }
+
+    @Test
+    public void idleAfterFinish() {
+        PartitionLeases.Partition partition = a.claim(false);
+        a.release(partition, true);
+        assertNull(owner(partition.index));
+        assertTrue((Long) lease(partition.index).get("idleUntil") > System.currentTimeMillis());
+
+        PartitionLeases.Partition other = b.claim(false);
+        assertNotNull(other);
+        assertEquals(1 - partition.index, other.index);
+        assertNull("finished partition should idle", node("c").claim(false));
+
+        lease(partition.index).put("idleUntil", System.currentTimeMillis() - 1);
+        PartitionLeases.Partition next = a.claim(false);
+        assertNotNull(next);
+        assertEquals(partition.index, next.index);
+        assertFalse("finished partition should start over", next.isResume());
+        assertFalse(lease(partition.index).containsKey("idleUntil"));
+    }
+
+    @Test
+    public void unfinishedReleaseResumes() {
+        PartitionLeases.Partition partition = a.claim(false);
+        b.claim(false);
+        a.release(partition, false);
+
+        PartitionLeases.Partition next = node("c").claim(false);
+        assertNotNull(next);
+        assertEquals(partition.index, next.index);
+        assertTrue(next.isResume());
+    }
+
+    @Test
+    public void singlePartitionWithoutLeases() {
+        PartitionLeases local = new PartitionLeases(status, "a", 1, TTL, IDLE);
+        PartitionLeases.Partition partition = local.claim(true);
+        assertNotNull(partition);
+        assertTrue(partition.isResume());
+        assertEquals("", partition.suffix());
+        assertNull(local.claim(true));
+        local.release(partition, true);
+        assertEquals(0, MemoryCollection.of(status).documents.size());
+
+        local.reset();
+        assertNotNull(local.claim(false));
+    }
+
+    PartitionLeases node(String name) {
+        return new PartitionLeases(status, name, 2, TTL, IDLE);
+    }
+
+    Document lease(int index) {
+        return (Document) MemoryCollection.of(status).get("fetch.rest.lease." + index).get("value");
+    }
+
+    String owner(int index) {
+        return lease(index).getString("owner");
+    }
+
+}
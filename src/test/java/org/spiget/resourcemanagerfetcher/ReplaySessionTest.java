@@ -0,0 +1,184 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the recorded session in <code>replay/session.ndjson</code> against a database seeded from it and checks the
+ * change feed the checks write.
+ */
+public class ReplaySessionTest {
+
+    File directory;
+    MemoryDatabase database;
+    ReplayApiClient replay;
+    SpigetRestFetcher fetcher;
+    ChangeFeed feed;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("replay-session").toFile();
+        database = new MemoryDatabase();
+        fetcher = new SpigetRestFetcher();
+        replay = new ReplayApiClient(new File(getClass().getResource("/replay/session.ndjson").toURI()), 1, 0, 5, fetcher.pipeline, new Random(0));
+
+        SpigetRestFetcher.databaseClient = database;
+        SpigetRestFetcher.writes = new WriteBatcher(fetcher.pipeline, null, 1000, 60000);
+        SpigetRestFetcher.digests = new DigestStore(new File(directory, "digests"));
+        feed = new ChangeFeed(new File(directory, "changes"), 1 << 20, 1000, 60000);
+        ChangeEvents.setFeed(feed);
+
+        fetcher.apiClient = replay;
+        fetcher.scheduler = ChangeScheduler.fromConfig(ChangeSchedulerTest.shippedConfig());
+        fetcher.updateRequests = new PendingUpdateRequests(database.getUpdateRequestsCollection(), SpigetRestFetcher.writes);
+        fetcher.startTime = System.currentTimeMillis();
+
+        new ReplaySeeder(database, replay, 1).seed();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        ChangeEvents.setFeed(null);
+        feed.close();
+        SpigetRestFetcher.writes.close();
+        SpigetRestFetcher.writes = null;
+        SpigetRestFetcher.digests = null;
+        SpigetRestFetcher.databaseClient = null;
+        replay.close();
+        try (Stream<java.nio.file.Path> files = Files.walk(directory.toPath())) {
+            for (java.nio.file.Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void seedsVersions() {
+        Document version = MemoryCollection.of(database.getResourceVersionsCollection()).get(9089);
+        assertEquals("2.18.2", version.getString("name"));
+        assertEquals(new Document("id", 9089), MemoryCollection.of(database.getResourcesCollection()).get(9089).get("version"));
+        assertEquals("1.2-previous", MemoryCollection.of(database.getResourceVersionsCollection()).get(10).getString("name"));
+
+        List<ResourceSnapshot> resources = resources();
+        for (ResourceSnapshot resource : resources) {
+            assertNotEquals("digest of #" + resource.getId(), 0L, ChangeDigest.ofResource(resource, resource.getVersionName()));
+        }
+    }
+
+    @Test
+    public void feedOfRecordedSession() throws IOException {
+        feed.begin(1);
+        check(new CheckStream<>(fetcher, new ResourceChecker(fetcher), new RateLimiter(1000, 1000), breaker(), new RetryQueue(10, 1, 0, 0), 1), resources());
+        check(new CheckStream<>(fetcher, new AuthorChecker(fetcher), new RateLimiter(1000, 1000), breaker(), new RetryQueue(10, 1, 0, 0), 1), authors());
+        Document report = feed.end();
+
+        assertEquals(new Document("resource.downloads", 2L).append("resource.version", 1L), report);
+        List<JsonObject> records = records(1);
+        assertEquals(3, records.size());
+        assertRecord(records, 10, "downloads", "119", "120");
+        assertRecord(records, 10, "version", "\"1.2-previous\"", "\"1.2\"");
+        assertRecord(records, 9089, "downloads", "1453511", "1453512");
+
+        // the stored resources now match SpigotMC except for the version the main fetcher has yet to update
+        SpigetRestFetcher.writes.flush();
+        feed.begin(2);
+        check(new CheckStream<>(fetcher, new ResourceChecker(fetcher), new RateLimiter(1000, 1000), breaker(), new RetryQueue(10, 1, 0, 0), 1), resources());
+        assertEquals(new Document("resource.version", 1L), feed.end());
+        records = records(2);
+        assertEquals(1, records.size());
+        assertRecord(records, 10, "version", "\"1.2-previous\"", "\"1.2\"");
+    }
+
+    @Test
+    public void notFoundLeavesDueRange() {
+        // recorded as 404
+        MemoryCollection.of(database.getResourcesCollection()).put(new Document("_id", 11).append("name", "Gone").append("fetch", new Document("restDue", 0L)));
+        CheckStream<ResourceSnapshot, ResourcePayload> stream = new CheckStream<>(fetcher, new ResourceChecker(fetcher), new RateLimiter(1000, 1000), breaker(), new RetryQueue(10, 1, 0, 0), 1);
+        long dueBefore = database.getResourcesCollection().countDocuments(stream.getChecker().dueFilter(fetcher.startTime));
+
+        ResourceSnapshot gone = ResourceSnapshot.fromDocument(MemoryCollection.of(database.getResourcesCollection()).get(11));
+        check(stream, Collections.singletonList(gone));
+        SpigetRestFetcher.writes.flush();
+
+        long due = (Long) ((Document) MemoryCollection.of(database.getResourcesCollection()).get(11).get("fetch")).get("restDue");
+        assertTrue(due >= fetcher.startTime + 86400000);
+        assertEquals(dueBefore - 1, database.getResourcesCollection().countDocuments(stream.getChecker().dueFilter(fetcher.startTime)));
+    }
+
+    List<ResourceSnapshot> resources() {
+        List<ResourceSnapshot> resources = new ArrayList<>();
+        for (Document document : database.getResourcesCollection().find().sort(new Document("_id", 1))) {
+            resources.add(ResourceSnapshot.fromDocument(document));
+        }
+        new ResourceChecker(fetcher).preparePage(resources);
+        return resources;
+    }
+
+    List<AuthorSnapshot> authors() {
+        List<AuthorSnapshot> authors = new ArrayList<>();
+        for (Document document : database.getAuthorsCollection().find()) {
+            authors.add(AuthorSnapshot.fromDocument(document));
+        }
+        return authors;
+    }
+
+    <T, P> void check(CheckStream<T, P> stream, List<T> items) {
+        for (T item : items) {
+            stream.check(item, stream.getChecker().request(replay, item).join());
+        }
+    }
+
+    ThrottleBreaker breaker() {
+        return new ThrottleBreaker(new RateLimiter(1000, 1000), 1000, 50, 0.2, 0.05, 0.1);
+    }
+
+    List<JsonObject> records(long run) throws IOException {
+        List<JsonObject> records = new ArrayList<>();
+        JsonParser parser = new JsonParser();
+        File[] files = new File(directory, "changes").listFiles((dir, name) -> name.startsWith("changes-" + run + "-") && name.endsWith(".ndjson"));
+        if (files == null) {return records;}
+        List<File> sorted = new ArrayList<>(java.util.Arrays.asList(files));
+        Collections.sort(sorted);
+        for (File file : sorted) {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                JsonObject record = parser.parse(line).getAsJsonObject();
+                assertEquals(run, record.get("run").getAsLong());
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    static void assertRecord(List<JsonObject> records, int id, String field, String oldValue, String newValue) {
+        for (JsonObject record : records) {
+            if (record.get("id").getAsInt() == id && field.equals(record.get("field").getAsString())) {
+                assertEquals("resource", record.get("entity").getAsString());
+                assertEquals(oldValue, record.get("old").toString());
+                assertEquals(newValue, record.get("new").toString());
+                return;
+            }
+        }
+        assertTrue("no " + field + " change of #" + id + " in " + records, false);
+    }
+
+}
@@ -0,0 +1,130 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.google.gson.stream.JsonReader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResourcePayloadTest {
+
+    static ResourcePayload read(String json) throws IOException {
+        ResourcePayload payload = ResourcePayload.local();
+        assertTrue(payload.read(new JsonReader(new StringReader(json))));
+        return payload;
+    }
+
+    static byte[] recorded(String name) throws IOException {
+        try (InputStream in = ResourcePayloadTest.class.getResourceAsStream("/payloads/" + name)) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    public void recordedPayload() throws IOException {
+        ResourcePayload payload = ResourcePayload.local();
+        try (JsonReader reader = new SpigotApiClient.Response(200, recorded("resource.json")).reader()) {
+            assertTrue(payload.read(reader));
+        }
+        assertEquals(9089, payload.getId());
+        assertEquals("EssentialsX", payload.getTitle());
+        assertEquals("The essential plugin suite for Spigot and Paper.", payload.getTag());
+        assertEquals("2.18.2", payload.getCurrentVersion());
+        assertEquals(162559, payload.getAuthorId());
+        assertEquals(1453512, payload.getDownloads());
+        assertEquals(1215, payload.getRatingCount());
+        assertEquals(4.67f, payload.getRating(), 0);
+    }
+
+    @Test
+    public void freeWithEmptyCurrency() throws IOException {
+        ResourcePayload payload = read("{\"premium\":{\"price\":\"0.00\",\"currency\":\"\"}}");
+        assertFalse(payload.isPremium());
+        assertEquals(0, payload.getPrice(), 0);
+        assertEquals("", payload.getCurrency());
+    }
+
+    @Test
+    public void premium() throws IOException {
+        ResourcePayload payload = read("{\"premium\":{\"price\":\"12.50\",\"currency\":\"eur\"}}");
+        assertTrue(payload.isPremium());
+        assertEquals(12.5, payload.getPrice(), 0);
+        assertEquals("EUR", payload.getCurrency());
+    }
+
+    @Test
+    public void reviewsAsObjectOrCount() throws IOException {
+        assertEquals(1215, read("{\"stats\":{\"reviews\":{\"unique\":\"1102\",\"total\":\"1215\"}}}").getRatingCount());
+        assertEquals(37, read("{\"stats\":{\"reviews\":\"37\"}}").getRatingCount());
+        assertEquals(37, read("{\"stats\":{\"reviews\":37}}").getRatingCount());
+    }
+
+    @Test
+    public void idAsStringOrNumber() throws IOException {
+        assertEquals(9089, read("{\"id\":\"9089\",\"author\":{\"id\":\"162559\"}}").getId());
+        ResourcePayload payload = read("{\"id\":9089,\"author\":{\"id\":162559}}");
+        assertEquals(9089, payload.getId());
+        assertEquals(162559, payload.getAuthorId());
+    }
+
+    @Test
+    public void unreadableNumbersAreMissing() throws IOException {
+        ResourcePayload payload = read("{\"id\":\"x\",\"stats\":{\"downloads\":null,\"rating\":\"n/a\",\"reviews\":[]}}");
+        assertEquals(-1, payload.getId());
+        assertEquals(-1, payload.getDownloads());
+        assertEquals(-1, payload.getRatingCount());
+        assertTrue(Float.isNaN(payload.getRating()));
+    }
+
+    @Test
+    public void localHolderIsReset() throws IOException {
+        read(new String(recorded("resource.json"), StandardCharsets.UTF_8));
+        ResourcePayload payload = read("{\"id\":\"10\"}");
+        assertEquals(10, payload.getId());
+        assertNull(payload.getTitle());
+        assertNull(payload.getCurrentVersion());
+        assertNull(payload.getCurrency());
+        assertFalse(payload.isPremium());
+        assertEquals(-1, payload.getAuthorId());
+        assertEquals(-1, payload.getDownloads());
+        assertEquals(-1, payload.getRatingCount());
+        assertTrue(Float.isNaN(payload.getRating()));
+    }
+
+    @Test
+    public void notAnObject() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader("[\"9089\", {\"id\":\"10\"}]"));
+        reader.beginArray();
+        assertFalse(ResourcePayload.local().read(reader));
+        assertTrue(ResourcePayload.local().read(reader));
+        assertEquals(10, ResourcePayload.local().getId());
+    }
+
+    @Test
+    public void list() throws IOException {
+        List<ResourcePayload> list = ResourcePayload.readList(new JsonReader(new StringReader("[{\"id\":\"1\"},null,{\"id\":\"2\"}]")));
+        assertEquals(2, list.size());
+        assertEquals(1, list.get(0).getId());
+        assertEquals(2, list.get(1).getId());
+        assertNull(ResourcePayload.readList(new JsonReader(new StringReader("{\"id\":\"1\"}"))));
+    }
+
+    @Test
+    public void utf8Body() throws IOException {
+        ResourcePayload payload = ResourcePayload.local();
+        byte[] body = "{\"title\":\"Gr\u00fc\u00dfe \u2603\"}".getBytes(StandardCharsets.UTF_8);
+        try (JsonReader reader = new SpigotApiClient.Response(200, body).reader()) {
+            assertTrue(payload.read(reader));
+        }
+        assertEquals("Gr\u00fc\u00dfe \u2603", payload.getTitle());
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.spiget.resourcemanagerfetcher;
+
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBatcherTest {
+
+    final MongoCollection<Document> collection = MemoryCollection.create("resources");
+    final MemoryCollection memory = MemoryCollection.of(collection);
+    final WriteBatcher writes = new WriteBatcher(new PipelineMetrics(), null, 1000, 60000);
+
+    @After
+    public void tearDown() {
+        writes.close();
+    }
+
+    @Test
+    public void mergesSetsOfADocument() {
+        memory.put(new Document("_id", 1));
+        writes.set(collection, 1, new Document("a", 1));
+        writes.set(collection, 1, new Document("b", 2).append("a", 3));
+        assertTrue(writes.flush());
+        assertEquals(new Document("_id", 1).append("a", 3).append("b", 2), memory.get(1));
+    }
+
+    @Test
+    public void failedSetsAreRequeued() {
+        memory.put(new Document("_id", 1));
+        memory.put(new Document("_id", 2));
+        writes.set(collection, 1, new Document("a", 1).append("b", 1));
+        writes.set(collection, 2, new Document("a", 1));
+        memory.failWrites = 1;
+        assertFalse(writes.flush());
+        assertNull(memory.get(1).get("a"));
+
+        // queued while the failed batch was out, so it wins
+        writes.set(collection, 1, new Document("b", 2));
+        assertFalse("backing off", writes.flush());
+        assertTrue(writes.flush(true));
+        assertEquals(new Document("_id", 1).append("a", 1).append("b", 2), memory.get(1));
+        assertEquals(new Document("_id", 2).append("a", 1), memory.get(2));
+        assertTrue(writes.flush());
+    }
+
+    @Test
+    public void failedUpsertsAreRequeued() {
+        writes.upsert(collection, new Document("_id", 3), new Document("$setOnInsert", new Document("name", "new")));
+        memory.failWrites = 2;
+        assertFalse(writes.flush(true));
+        assertFalse(writes.flush(true));
+        assertNull(memory.get(3));
+        assertTrue(writes.close());
+        assertEquals(new Document("_id", 3).append("name", "new"), memory.get(3));
+    }
+
+    @Test
+    public void journalOfFailedWriteIsKept() throws IOException {
+        File file = File.createTempFile("journal", ".log");
+        try {
+            WorkJournal journal = new WorkJournal(file, 60000);
+            journal.open();
+            journal.begin(1);
+            WriteBatcher journaled = new WriteBatcher(new PipelineMetrics(), journal, 1000, 60000);
+            memory.put(new Document("_id", 1));
+            journaled.set(collection, 1, new Document("a", 1));
+            journaled.set(collection, 2, new Document("a", 1));
+            memory.failWrites = 1;
+            journal.end(journaled.flush());
+            journal.close();
+
+            WorkJournal reopened = new WorkJournal(file, 60000);
+            reopened.open();
+            assertEquals(0, reopened.getCycleStart());
+            assertEquals(2, reopened.requeue(writes, Collections.singletonMap("resources", collection)));
+            reopened.close();
+            assertTrue(writes.flush());
+            assertEquals(new Document("_id", 1).append("a", 1), memory.get(1));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void retriedWriteIsNotReplayed() throws IOException {
+        File file = File.createTempFile("journal", ".log");
+        try {
+            WorkJournal journal = new WorkJournal(file, 60000);
+            journal.open();
+            WriteBatcher journaled = new WriteBatcher(new PipelineMetrics(), journal, 1000, 60000);
+            memory.put(new Document("_id", 1));
+            journaled.set(collection, 1, new Document("a", 1));
+            memory.failWrites = 1;
+            assertFalse(journaled.flush());
+            assertTrue(journaled.close());
+            journal.close();
+
+            WorkJournal reopened = new WorkJournal(file, 60000);
+            reopened.open();
+            assertEquals(0, reopened.requeue(writes, Collections.singletonMap("resources", collection)));
+            reopened.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+}